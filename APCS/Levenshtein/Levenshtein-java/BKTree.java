@@ -0,0 +1,370 @@
+// Copyright (c) Michael M. Magruder (https://github.com/mikemag)
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
+// Find every dictionary word within edit distance k of any string, e.g., a misspelled word.
+//
+// The obvious way is to compute the distance from the query to every word in the dictionary. A
+// BK-tree (Burkhard and Keller, 1973) lets us skip most of them. Each node is a word, and each
+// child is labeled with its distance from that word, so all of the words in the subtree under the
+// child labeled d are exactly distance d from the node's word. Edit distance obeys the triangle
+// inequality, so if the query is distance x from a node's word, any word within k of the query
+// must be between x - k and x + k from the node's word. We only need to look under children with
+// labels in that range, and for small k that's a small part of the tree.
+//
+// The usual way to build one is to insert words one at a time, walking down from the root, which
+// can't be done in parallel. Instead we build it top down: the first word of a set is the node,
+// we find the distance from it to every other word in the set, and group the words by that
+// distance. Each group becomes the subtree under the child with that label, and since the groups
+// have nothing to do with each other, they're built in parallel with fork/join. Big sets find their
+// distances in parallel too. The result is a BK-tree like any other.
+//
+// Words more than k apart in length are more than k edits apart, and a full scan can skip them
+// without computing anything, which a single tree can't do. So there's really a tree per word
+// length, and a query only searches the trees for lengths within k of its own.
+//
+// All of the distances are Myers', see Levenshtein.editDistanceMyers(). Queries compare one word
+// against many, so they build the query's match masks just once, with a MyersPattern.
+//
+// While building, the trees are a few int arrays indexed by word id, since every word is exactly
+// one node: each node's first child, next sibling, and distance from its parent. But a query hops
+// all over those, and all over the heap to get to each word, so nearly every step is a cache miss.
+// So once the trees are built we lay them out again, breadth first. Each node's children are then
+// next to each other, in order by distance, so a query reads a node's children straight through and
+// stops at the first one that's too far. The words are copied in the same order, so nearby nodes'
+// words are nearby in memory too.
+public class BKTree {
+
+  private static final int sequentialThreshold = 2048; // Build sets smaller than this in one task
+
+  private final String[] words; // In dictionary order, for scan()
+  private final int[] roots; // Each word length's tree, or -1 if there are no such words
+
+  // Node p's word is nodeWords[p], and its children are nodes childStarts[p] to childStarts[p + 1],
+  // in order by distances[child], their distance from p.
+  private final String[] nodeWords;
+  private final int[] childStarts;
+  private final byte[] distances;
+  private final long buildNanos;
+
+  // A word and how far it is from the query.
+  public record Match(String word, int distance) {
+
+  }
+
+  public BKTree(List<String> dictionary) {
+    long startTime = System.nanoTime();
+    this.words = dictionary.toArray(new String[0]);
+    int n = words.length;
+    Build b = new Build(words);
+
+    // Split the words up by length, in a random order within each length. The dictionary is sorted,
+    // and random nodes make for better balanced trees.
+    int maxLength = 0;
+    for (String w : words) {
+      maxLength = Math.max(maxLength, w.length());
+    }
+    int[] all = new int[n];
+    Arrays.setAll(all, i -> i);
+    Random random = new Random(n);
+    for (int i = n - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int t = all[i];
+      all[i] = all[j];
+      all[j] = t;
+    }
+    int[] starts = new int[maxLength + 2];
+    for (String w : words) {
+      starts[w.length() + 1]++;
+    }
+    for (int l = 0; l <= maxLength; l++) {
+      starts[l + 1] += starts[l];
+    }
+    int[] byLength = new int[n];
+    int[] next = Arrays.copyOf(starts, maxLength + 1);
+    for (int i : all) {
+      byLength[next[words[i].length()]++] = i;
+    }
+
+    ArrayList<BuildTask> tasks = new ArrayList<>();
+    for (int l = 0; l <= maxLength; l++) {
+      if (starts[l] < starts[l + 1]) {
+        tasks.add(new BuildTask(b, Arrays.copyOfRange(byLength, starts[l], starts[l + 1])));
+      }
+    }
+    ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+      @Override
+      protected void compute() {
+        invokeAll(tasks);
+      }
+    });
+
+    // Lay the trees out breadth first, all of the roots first. As we take each node off the queue,
+    // its children go on the end, so they're all together.
+    int[] order = new int[n];
+    int tail = 0;
+    roots = new int[maxLength + 1];
+    Arrays.fill(roots, -1);
+    for (int l = 0; l <= maxLength; l++) {
+      if (starts[l] < starts[l + 1]) {
+        roots[l] = tail;
+        order[tail++] = byLength[starts[l]];
+      }
+    }
+    childStarts = new int[n + 1];
+    for (int head = 0; head < n; head++) {
+      childStarts[head] = tail;
+      for (int c = b.firstChild[order[head]]; c >= 0; c = b.nextSibling[c]) {
+        order[tail++] = c;
+      }
+    }
+    childStarts[n] = tail;
+    nodeWords = new String[n];
+    distances = new byte[n];
+    for (int p = 0; p < n; p++) {
+      nodeWords[p] = new String(words[order[p]].toCharArray()); // A copy, next to its neighbors
+      distances[p] = (byte) b.parentDistance[order[p]];
+    }
+    buildNanos = System.nanoTime() - startTime;
+  }
+
+  // The trees by word id, while we're building them.
+  private static class Build {
+
+    final String[] words;
+    final int[] firstChild;
+    final int[] nextSibling;
+    final int[] parentDistance;
+
+    Build(String[] words) {
+      this.words = words;
+      firstChild = new int[words.length];
+      nextSibling = new int[words.length];
+      parentDistance = new int[words.length];
+      Arrays.fill(firstChild, -1);
+      Arrays.fill(nextSibling, -1);
+    }
+  }
+
+  // Make the first word of the set a node, and the rest its subtrees.
+  private static class BuildTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Build b;
+    private final int[] set;
+
+    BuildTask(Build b, int[] set) {
+      this.b = b;
+      this.set = set;
+    }
+
+    @Override
+    protected void compute() {
+      String[] words = b.words;
+      int node = set[0];
+      String w = words[node];
+      int[] d = new int[set.length];
+      if (set.length >= sequentialThreshold) {
+        IntStream.range(1, set.length).parallel()
+            .forEach(i -> d[i] = Levenshtein.editDistanceMyers(w, words[set[i]]));
+      } else {
+        Levenshtein.MyersPattern p = new Levenshtein.MyersPattern(w);
+        for (int i = 1; i < set.length; i++) {
+          d[i] = p.distance(words[set[i]]);
+        }
+      }
+
+      // Group by distance with a counting sort. Distances can't be more than the longest word.
+      int maxDistance = 0;
+      for (int i = 1; i < set.length; i++) {
+        maxDistance = Math.max(maxDistance, d[i]);
+      }
+      int[] starts = new int[maxDistance + 2];
+      for (int i = 1; i < set.length; i++) {
+        starts[d[i] + 1]++;
+      }
+      for (int i = 0; i <= maxDistance; i++) {
+        starts[i + 1] += starts[i];
+      }
+      int[] sorted = new int[set.length - 1];
+      int[] next = Arrays.copyOf(starts, maxDistance + 1);
+      for (int i = 1; i < set.length; i++) {
+        sorted[next[d[i]]++] = set[i];
+      }
+
+      // Link up the children first, then build under them. Each task only writes its own nodes.
+      // Going backwards leaves the children in order by distance.
+      ArrayList<BuildTask> subtasks = new ArrayList<>();
+      for (int dist = maxDistance; dist >= 0; dist--) {
+        if (starts[dist] == starts[dist + 1]) {
+          continue;
+        }
+        int[] group = Arrays.copyOfRange(sorted, starts[dist], starts[dist + 1]);
+        int child = group[0];
+        b.parentDistance[child] = dist;
+        b.nextSibling[child] = b.firstChild[node];
+        b.firstChild[node] = child;
+        if (group.length > 1) {
+          subtasks.add(new BuildTask(b, group));
+        }
+      }
+      if (set.length >= sequentialThreshold) {
+        invokeAll(subtasks);
+      } else {
+        for (BuildTask t : subtasks) {
+          t.compute();
+        }
+      }
+    }
+  }
+
+  public int size() {
+    return words.length;
+  }
+
+  public long getBuildNanos() {
+    return buildNanos;
+  }
+
+  // Every word within k of the query, closest first, then alphabetically.
+  public List<Match> find(String query, int k) {
+    return find(query, k, null);
+  }
+
+  // As above, also counting how many distances we had to compute in visited[0].
+  public List<Match> find(String query, int k, long[] visited) {
+    ArrayList<Match> matches = new ArrayList<>();
+    int[] stack = new int[64];
+    int top = 0;
+    for (int l = Math.max(0, query.length() - k);
+        l <= Math.min(roots.length - 1, query.length() + k); l++) {
+      if (roots[l] >= 0) {
+        stack[top++] = roots[l];
+      }
+    }
+    Levenshtein.MyersPattern p = new Levenshtein.MyersPattern(query);
+    long count = 0;
+    while (top > 0) {
+      int node = stack[--top];
+      int d = p.distance(nodeWords[node]);
+      count++;
+      if (d <= k) {
+        matches.add(new Match(nodeWords[node], d));
+      }
+      for (int c = childStarts[node]; c < childStarts[node + 1]; c++) {
+        int cd = distances[c];
+        if (cd < d - k) {
+          continue;
+        }
+        if (cd > d + k) {
+          break; // The rest are even farther.
+        }
+        if (top == stack.length) {
+          stack = Arrays.copyOf(stack, top * 2);
+        }
+        stack[top++] = c;
+      }
+    }
+    if (visited != null) {
+      visited[0] += count;
+    }
+    matches.sort(byDistance);
+    return matches;
+  }
+
+  private static final Comparator<Match> byDistance =
+      Comparator.comparingInt(Match::distance).thenComparing(Match::word);
+
+  // The same thing the slow way, looking at every word. Words too different in length can be
+  // skipped without computing anything.
+  public List<Match> scan(String query, int k) {
+    ArrayList<Match> matches = new ArrayList<>();
+    Levenshtein.MyersPattern p = new Levenshtein.MyersPattern(query);
+    for (String w : words) {
+      if (Math.abs(w.length() - query.length()) <= k) {
+        int d = p.distance(w);
+        if (d <= k) {
+          matches.add(new Match(w, d));
+        }
+      }
+    }
+    matches.sort(byDistance);
+    return matches;
+  }
+
+  // Queries per second for k = 1, 2, 3, vs. a full scan, with some misspelled dictionary words.
+  // The answers have to match.
+  public void runBenchmark(int queryCount, long seed) {
+    System.out.format("Built BK-tree of %,d words in %,.2fms\n", words.length,
+        buildNanos / 1_000_000.0);
+    Random random = new Random(seed);
+    String[] queries = new String[queryCount];
+    for (int i = 0; i < queryCount; i++) {
+      queries[i] = misspell(words[random.nextInt(words.length)], random);
+    }
+    System.out.println("Example: " + queries[0] + " -> " + find(queries[0], 1));
+
+    for (int k = 1; k <= 3; k++) {
+      long[] visited = new long[1];
+      int matches = 0;
+      int mismatches = 0;
+      List<List<Match>> treeResults = new ArrayList<>();
+      long startTime = System.nanoTime();
+      for (String q : queries) {
+        List<Match> m = find(q, k, visited);
+        matches += m.size();
+        treeResults.add(m);
+      }
+      double treeMS = (System.nanoTime() - startTime) / 1_000_000.0;
+
+      startTime = System.nanoTime();
+      for (int i = 0; i < queries.length; i++) {
+        List<Match> m = scan(queries[i], k);
+        if (!new HashSet<>(m).equals(new HashSet<>(treeResults.get(i)))) {
+          mismatches++;
+        }
+      }
+      double scanMS = (System.nanoTime() - startTime) / 1_000_000.0;
+
+      System.out.format("k=%d: BK-tree %,.1f queries/s, %,.1f%% of words visited, scan %,.1f "
+              + "queries/s, %.1fx faster, avg %.1f matches, %d mismatches\n", k,
+          queries.length / (treeMS / 1000.0),
+          (double) visited[0] / queries.length / words.length * 100.0,
+          queries.length / (scanMS / 1000.0), scanMS / treeMS, (double) matches / queries.length,
+          mismatches);
+    }
+    System.out.println();
+  }
+
+  // One random insertion, deletion, or substitution.
+  private static String misspell(String w, Random random) {
+    char c = (char) ('a' + random.nextInt(26));
+    int i = random.nextInt(w.length() + 1);
+    switch (random.nextInt(3)) {
+      case 0:
+        return w.substring(0, i) + c + w.substring(i);
+      case 1:
+        if (i < w.length()) {
+          return w.substring(0, i) + w.substring(i + 1);
+        }
+        return w + c;
+      default:
+        if (i < w.length()) {
+          return w.substring(0, i) + c + w.substring(i + 1);
+        }
+        return c + w;
+    }
+  }
+}
@@ -0,0 +1,266 @@
+// Copyright (c) Michael M. Magruder (https://github.com/mikemag)
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+// Answer a whole file of word pairs at once, many at a time.
+//
+// The sample pairs and the interactive loop in main() do one pair at a time, and the parallel
+// searches only help within a single pair. When there are thousands of pairs to answer, it's much
+// better to run whole queries in parallel: each one is independent, and they all share the same
+// read-only neighbor structure, so there's nothing to coordinate but handing out the next pair.
+//
+// Each worker thread takes the next unanswered pair, finds a ShortestPathDAG for it, and formats
+// its line of output. Over a NeighborGraph each worker has its own OrdinalBFS, so nothing is
+// allocated or shared per query. In lazy mode the workers share the NeighborCache, so a word's
+// neighbors are found once, by whichever query needs them first, and every other query gets them
+// for free.
+//
+// The input is one pair per line, separated by whitespace. Blank lines and lines starting with #
+// are skipped. The output is one tab-separated line per pair, in the same order as the input:
+//
+//   from  to  length  pathCount  [path; path; ...]
+//
+// where length is -1 if there's no ladder, and the paths, if we're writing them, have their words
+// separated by spaces. A pair whose search blew up gets length -1, pathCount 0, and "error: " and
+// the exception instead of paths, and the batch carries on without it.
+public class BatchQueries {
+
+  // Options
+  private static final int batchThreadCount = Runtime.getRuntime().availableProcessors();
+  private static final int maxPathsPerPair = 100; // Some pairs have thousands, we don't need all
+  private static final int generatedPairCount = 2000; // When there's no input file
+  private static final long generatedPairSeed = 42;
+
+  private static class Query {
+
+    final String w1;
+    final String w2;
+    String result = null;
+    long nanos = 0;
+    int length = -1;
+    boolean failed = false;
+
+    Query(String w1, String w2) {
+      this.w1 = w1;
+      this.w2 = w2;
+    }
+  }
+
+  public static void run(String inputFilename, String outputFilename, boolean writePaths) {
+    if (!Files.exists(Paths.get(inputFilename))) {
+      writeRandomPairs(inputFilename, generatedPairCount, generatedPairSeed);
+    }
+    List<Query> queries = readPairs(inputFilename);
+    if (queries.isEmpty()) {
+      System.out.format("No pairs to run in %s\n\n", inputFilename);
+      return;
+    }
+
+    // Every worker gets neighbors the same way. The full map is read-only once it's built, so
+    // unlike getNeighborsWithLazyBuild() we must not add anything to it here.
+    Function<String, List<String>> neighbors;
+    if (Levenshtein.neighborCache != null) {
+      neighbors = Levenshtein.neighborCache::get;
+    } else {
+      neighbors = w -> Levenshtein.neighbors.getOrDefault(w, Collections.emptyList());
+    }
+
+    System.out.format("Running %,d pairs from %s with %d threads...\n", queries.size(),
+        inputFilename, batchThreadCount);
+    long startTime = System.nanoTime();
+
+    // A simple shared counter hands out the pairs, so a thread that gets a few slow pairs doesn't
+    // hold everyone else up.
+    AtomicInteger nextQuery = new AtomicInteger(0);
+    CountDownLatch doneLatch = new CountDownLatch(batchThreadCount);
+    ExecutorService pool = Executors.newFixedThreadPool(batchThreadCount);
+    for (int t = 0; t < batchThreadCount; t++) {
+      pool.submit(() -> {
+        try {
+          int i;
+          while ((i = nextQuery.getAndIncrement()) < queries.size()) {
+            Query q = queries.get(i);
+            long queryStartTime = System.nanoTime();
+            try {
+              runQuery(q, neighbors, writePaths);
+            } catch (RuntimeException e) {
+              // One bad pair shouldn't cost us this worker, or leave a hole in the output.
+              e.printStackTrace();
+              q.result = q.w1 + "\t" + q.w2 + "\t-1\t0\terror: " + e.toString()
+                  .replaceAll("\\s+", " ");
+              q.length = -1;
+              q.failed = true;
+            }
+            q.nanos = System.nanoTime() - queryStartTime; // Failures count toward latency too
+          }
+        } finally {
+          doneLatch.countDown();
+        }
+      });
+    }
+    try {
+      doneLatch.await();
+    } catch (InterruptedException e) {
+      e.printStackTrace();
+    }
+    pool.shutdown();
+    double elapsedMS = (System.nanoTime() - startTime) / 1_000_000.0;
+
+    writeResults(outputFilename, queries);
+    report(queries, elapsedMS);
+  }
+
+  private static void runQuery(Query q, Function<String, List<String>> neighbors,
+      boolean writePaths) {
+    ShortestPathDAG dag;
+    NeighborGraph graph = Levenshtein.graph;
+    if (graph != null) {
+      dag = ShortestPathDAG.search(graph, Levenshtein.getOrdinalBFS(), graph.getId(q.w1),
+          graph.getId(q.w2));
+    } else {
+      dag = ShortestPathDAG.search(q.w1, q.w2, neighbors, false, Levenshtein.lazyComponents);
+    }
+
+    StringBuilder sb = new StringBuilder();
+    sb.append(q.w1).append('\t').append(q.w2).append('\t').append(dag.getLength()).append('\t')
+        .append(dag.getPathCount());
+    if (writePaths && dag.getPathCount() > 0) {
+      sb.append('\t');
+      Iterator<List<String>> it = dag.paths();
+      for (int p = 0; p < maxPathsPerPair && it.hasNext(); p++) {
+        if (p > 0) {
+          sb.append("; ");
+        }
+        sb.append(String.join(" ", it.next()));
+      }
+    }
+    q.result = sb.toString();
+    q.length = dag.getLength();
+  }
+
+  private static List<Query> readPairs(String filename) {
+    ArrayList<Query> queries = new ArrayList<>();
+    try {
+      Scanner scanner = new Scanner(new File(filename));
+      while (scanner.hasNextLine()) {
+        String line = scanner.nextLine().trim();
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+        String[] pair = line.split("\\s+");
+        if (pair.length != 2) {
+          System.out.format("Skipping bad line in %s: '%s'\n", filename, line);
+          continue;
+        }
+        queries.add(new Query(pair[0], pair[1]));
+      }
+      scanner.close();
+    } catch (FileNotFoundException e) {
+      e.printStackTrace();
+    }
+    return queries;
+  }
+
+  private static void writeResults(String filename, List<Query> queries) {
+    try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(filename)))) {
+      for (Query q : queries) {
+        out.println(q.result);
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  // Pairs per second for the whole batch, and the spread of the time each query took by itself.
+  private static void report(List<Query> queries, double elapsedMS) {
+    long[] nanos = new long[queries.size()];
+    int found = 0;
+    int failed = 0;
+    for (int i = 0; i < nanos.length; i++) {
+      nanos[i] = queries.get(i).nanos;
+      if (queries.get(i).length >= 0) {
+        found++;
+      }
+      if (queries.get(i).failed) {
+        failed++;
+      }
+    }
+    Arrays.sort(nanos);
+
+    System.out.format("Done %,.2fms, %,.1f pairs/s, %,d with a ladder, %,d without, %,d failed\n",
+        elapsedMS, nanos.length / (elapsedMS / 1000.0), found, nanos.length - found - failed,
+        failed);
+    System.out.format("Query latency: p50 %,.2fms, p90 %,.2fms, p99 %,.2fms, p99.9 %,.2fms, "
+            + "max %,.2fms\n", percentileMS(nanos, 50), percentileMS(nanos, 90),
+        percentileMS(nanos, 99), percentileMS(nanos, 99.9), nanos[nanos.length - 1] / 1_000_000.0);
+    if (Levenshtein.neighborCache != null) {
+      System.out.println(Levenshtein.neighborCache);
+    }
+    if (Levenshtein.lazyComponents != null) {
+      System.out.println(Levenshtein.lazyComponents);
+    }
+    System.out.println();
+  }
+
+  // Nearest rank, on sorted values.
+  private static double percentileMS(long[] sorted, double p) {
+    int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+    return sorted[Math.max(0, rank - 1)] / 1_000_000.0;
+  }
+
+  // Make a file of random pairs to play with, picking only words that have neighbors. Plenty of
+  // them still won't have a ladder between them.
+  public static void writeRandomPairs(String filename, int count, long seed) {
+    List<String> words = Levenshtein.words;
+    Random random = new Random(seed);
+    ArrayList<String> withNeighbors = new ArrayList<>();
+    while (withNeighbors.size() < count * 2) {
+      String w = words.get(random.nextInt(words.size()));
+      if (hasNeighbors(w)) {
+        withNeighbors.add(w);
+      }
+    }
+
+    try (PrintWriter out = new PrintWriter(new BufferedWriter(Files.newBufferedWriter(
+        Paths.get(filename))))) {
+      out.println("# " + count + " random pairs of words with neighbors, seed " + seed);
+      for (int i = 0; i < count; i++) {
+        out.println(withNeighbors.get(i * 2) + " " + withNeighbors.get(i * 2 + 1));
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    System.out.format("Wrote %,d random pairs to %s\n", count, filename);
+  }
+
+  private static boolean hasNeighbors(String w) {
+    if (Levenshtein.graph != null) {
+      return Levenshtein.graph.degree(Levenshtein.graph.getId(w)) > 0;
+    }
+    if (Levenshtein.neighborCache != null) {
+      return !Levenshtein.neighborCache.get(w).isEmpty();
+    }
+    return Levenshtein.neighbors.containsKey(w);
+  }
+}
@@ -0,0 +1,220 @@
+// Copyright (c) Michael M. Magruder (https://github.com/mikemag)
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+// Which connected component each word is in, so we can say "no ladder" without searching.
+//
+// The slowest queries are the ones with no answer: the BFS has to explore every word it can reach
+// from the start before it can give up, and the biggest component has over 100k words. But if two
+// words are in different components there's never a ladder between them, and that's just a
+// comparison of two labels.
+//
+// For a NeighborGraph we label everything up front with a union-find over the edges. Every word
+// starts as its own set, and each edge merges the sets of its two words. At the end each set is a
+// component. The merging runs in parallel without locks: a set's root is only ever changed with a
+// compare-and-set, always pointing the larger root at the smaller, and if another thread changed a
+// root out from under us we just find the new roots and try again. Lookups shorten paths as they
+// go (path halving), so the trees stay flat. It takes well under a second for the whole
+// dictionary.
+//
+// For the lazy searches we don't have the edges, so see Lazy below.
+public class ComponentIndex {
+
+  private final int[] labels; // Component of each word, numbered densely from 0
+  private final int[] sizes; // Words in each component
+  private final long buildNanos;
+
+  public ComponentIndex(NeighborGraph g) {
+    long startTime = System.nanoTime();
+    int n = g.size();
+    AtomicIntegerArray parents = new AtomicIntegerArray(n);
+    for (int i = 0; i < n; i++) {
+      parents.set(i, i);
+    }
+
+    // Each undirected edge is in the graph twice, we only need it once.
+    IntStream.range(0, n).parallel().forEach(u -> {
+      for (int e = g.offsets[u]; e < g.offsets[u + 1]; e++) {
+        int v = g.edges[e];
+        if (v > u) {
+          union(parents, u, v);
+        }
+      }
+    });
+
+    // A root is always the smallest id in its set, so by the time we get to any word we've already
+    // numbered its root.
+    labels = new int[n];
+    int count = 0;
+    for (int i = 0; i < n; i++) {
+      int r = find(parents, i);
+      labels[i] = r == i ? count++ : labels[r];
+    }
+    sizes = new int[count];
+    for (int i = 0; i < n; i++) {
+      sizes[labels[i]]++;
+    }
+    buildNanos = System.nanoTime() - startTime;
+  }
+
+  private static int find(AtomicIntegerArray parents, int x) {
+    int p;
+    while ((p = parents.get(x)) != x) {
+      int gp = parents.get(p);
+      parents.compareAndSet(x, p, gp); // Path halving, fine if someone beat us to it.
+      x = gp;
+    }
+    return x;
+  }
+
+  private static void union(AtomicIntegerArray parents, int a, int b) {
+    while (true) {
+      a = find(parents, a);
+      b = find(parents, b);
+      if (a == b) {
+        return;
+      }
+      if (a < b) {
+        int t = a;
+        a = b;
+        b = t;
+      }
+      if (parents.compareAndSet(a, a, b)) { // Only if a is still a root
+        return;
+      }
+    }
+  }
+
+  public int getLabel(int id) {
+    return labels[id];
+  }
+
+  public boolean connected(int a, int b) {
+    return labels[a] == labels[b];
+  }
+
+  public int getComponentCount() {
+    return sizes.length;
+  }
+
+  public int getComponentSize(int label) {
+    return sizes[label];
+  }
+
+  public long getBuildNanos() {
+    return buildNanos;
+  }
+
+  // Component count and how big they are, bucketed by powers of 10. Words with no neighbors are
+  // components of their own, so they're counted separately.
+  public void printAnalysis() {
+    int[] sorted = sizes.clone();
+    Arrays.sort(sorted);
+    int singletons = 0;
+    int[] buckets = new int[8];
+    for (int s : sorted) {
+      if (s == 1) {
+        singletons++;
+      } else {
+        buckets[Math.min(buckets.length - 1, (int) Math.log10(s))]++;
+      }
+    }
+
+    System.out.format("Components: %,d, %,d of them single words, labeled in %,.2fms\n",
+        sorted.length, singletons, buildNanos / 1_000_000.0);
+    System.out.format("Largest components: %s\n", Arrays.toString(
+        Arrays.copyOfRange(sorted, Math.max(0, sorted.length - 5), sorted.length)));
+    System.out.print("Components by size:");
+    for (int b = 0; b < buckets.length; b++) {
+      if (buckets[b] > 0) {
+        int low = b == 0 ? 2 : (int) Math.pow(10, b);
+        System.out.format(" %,d-%,d: %,d", low, (int) Math.pow(10, b + 1) - 1, buckets[b]);
+      }
+    }
+    System.out.println("\n");
+  }
+
+  // Components for the lazy searches, labeled as we find them.
+  //
+  // When a lazy BFS runs out of words without finding its target, it has explored the start word's
+  // entire component, so we label every word it found. After that, a search from any of those words
+  // to a word which isn't labeled the same can't succeed: either the other word has a different
+  // label, or it isn't labeled at all, in which case it isn't in this component since we know all
+  // of this component's words. Successful searches stop early, so they don't tell us anything.
+  //
+  // Searches can start from words which aren't in the dictionary, if they have neighbors, and
+  // those are never labeled. An unlabeled dictionary word really is outside every labeled
+  // component, but an unlabeled start word which isn't in the dictionary might have neighbors in
+  // any of them, so it only gets turned away by its target's component if it's a dictionary word.
+  // Searches from such words which come up empty aren't recorded either: the start word could join
+  // up components which are really separate, and we'd lose the ability to tell them apart.
+  //
+  // Labels are only trusted once every word in the component has one, so a search running while
+  // another thread is still adding a component just doesn't get to use it yet. Adding is
+  // serialized, so two searches which explored the same component at the same time don't end up
+  // splitting it between two labels.
+  //
+  // This grows with the components we've explored, at most one entry per word. Thread-safe.
+  public static class Lazy {
+
+    private final ConcurrentHashMap<String, Integer> labels = new ConcurrentHashMap<>();
+    private final Set<Integer> complete = ConcurrentHashMap.newKeySet();
+    private int nextLabel = 0; // Guarded by this
+    private final Predicate<String> inDictionary;
+
+    public Lazy(Predicate<String> inDictionary) {
+      this.inDictionary = inDictionary;
+    }
+
+    // True if we know there's no path between the two words.
+    public boolean knownDisconnected(String w1, String w2) {
+      if (w1.equals(w2)) {
+        return false;
+      }
+      Integer l1 = labels.get(w1);
+      Integer l2 = labels.get(w2);
+      if (l1 != null && complete.contains(l1) && !l1.equals(l2)) {
+        return true;
+      }
+      return l2 != null && complete.contains(l2) && !l2.equals(l1)
+          && (l1 != null || inDictionary.test(w1));
+    }
+
+    // Every word in a component, after a search from start explored all of it.
+    public synchronized void addComponent(String start, Collection<String> words) {
+      if (labels.containsKey(start)) {
+        return; // Someone else explored it too, and beat us here.
+      }
+      if (!inDictionary.test(start)) {
+        return; // Not a real component, see above.
+      }
+      Integer label = nextLabel++;
+      for (String w : words) {
+        labels.put(w, label);
+      }
+      complete.add(label);
+    }
+
+    public synchronized int getComponentCount() {
+      return nextLabel;
+    }
+
+    public int getLabeledWords() {
+      return labels.size();
+    }
+
+    public String toString() {
+      return String.format("Lazy components: %,d labeled, %,d words", getComponentCount(),
+          getLabeledWords());
+    }
+  }
+}
@@ -0,0 +1,337 @@
+// Copyright (c) Michael M. Magruder (https://github.com/mikemag)
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+// A "symmetric delete" index for finding neighbors.
+//
+// Two words are within one edit of each other exactly when one of these is true:
+//
+// 1. They're the same length, and deleting the same position from both gives the same string.
+//    (That's a substitution, e.g., dog & dot both give "do".)
+//
+// 2. Deleting one letter from the longer word gives the shorter word. (An insertion or deletion,
+//    e.g., dog & dogs.)
+//
+// So, if we index every word under every single-letter deletion of itself, and under itself, then
+// the neighbors of a word are found with a handful of lookups: one for the word itself, and one for
+// each of its deletions. Candidates are then verified with the cheater functions, since sharing a
+// deletion isn't quite enough. E.g., "ab" and "ba" both give "a", but they're two edits apart.
+//
+// To keep this small and fast we don't store the deleted strings at all. Each key is a 64-bit hash
+// of the string, computed without allocating it, and the top 44 bits of the hash are packed into a
+// long along with a 20-bit word id. All of those are sorted into one long[], so a lookup is a
+// binary search for a range of entries. Hash collisions just give us a few extra candidates, which
+// verification throws out.
+//
+// The same idea works for neighbors up to k edits apart: if two words are within k edits, then
+// deleting at most k letters from each gives the same string. (Delete each substituted letter from
+// both, and each inserted letter from the word which has it. That's at most k from either side.)
+// So we index every word under every string we can get by deleting up to k of its letters, and
+// verify candidates with Levenshtein.distanceAtMost(). There are a lot more keys, roughly L^k/k!
+// per word, but that's still only ~50 per word at k = 2, and each lookup is just as cheap. The keys
+// are made by actually deleting letters from a small buffer, rather than stitching hashes together,
+// and duplicates (from deleting different letters of a run) are removed per word.
+public class DeletionIndex {
+
+  private static final int idBits = 20;
+  private static final long idMask = (1L << idBits) - 1;
+  private static final long prime = 0x100000001B3L;
+
+  private final List<String> words;
+  private final int maxEdits;
+  private final long[] entries;
+  private final long buildNanos;
+
+  public DeletionIndex(List<String> words) {
+    this(words, 1);
+  }
+
+  // An index for finding words up to maxEdits apart.
+  public DeletionIndex(List<String> words, int maxEdits) {
+    if (words.size() > idMask) {
+      throw new IllegalArgumentException("Too many words for the deletion index: " + words.size());
+    }
+    long startTime = System.nanoTime();
+    this.words = words;
+    this.maxEdits = maxEdits;
+    if (maxEdits > 1) {
+      entries = buildMultiEdit(words, maxEdits);
+      buildNanos = System.nanoTime() - startTime;
+      return;
+    }
+
+    int total = 0;
+    int longest = 0;
+    for (String w : words) {
+      total += 1 + uniqueDeletionCount(w);
+      longest = Math.max(longest, w.length());
+    }
+
+    long[] e = new long[total];
+    int n = 0;
+    long[] hashes = new long[longest + 1]; // The word and at most one deletion per letter
+    for (int id = 0; id < words.size(); id++) {
+      String w = words.get(id);
+      int keyCount = keyHashes(w, hashes);
+      for (int k = 0; k < keyCount; k++) {
+        e[n++] = pack(hashes[k], id);
+      }
+    }
+    Arrays.parallelSort(e);
+    entries = e;
+    buildNanos = System.nanoTime() - startTime;
+  }
+
+  public long getBuildNanos() {
+    return buildNanos;
+  }
+
+  public long getSizeInBytes() {
+    return (long) entries.length * Long.BYTES;
+  }
+
+  public int getEntryCount() {
+    return entries.length;
+  }
+
+  public int getMaxEdits() {
+    return maxEdits;
+  }
+
+  // Find all words one edit away from w, or up to maxEdits away.
+  public void findNeighbors(String w, List<String> nl) {
+    for (int id : findNeighborIds(w)) {
+      nl.add(words.get(id));
+    }
+  }
+
+  // Find the ids, i.e., positions in the list of words, of all words one edit away from w, or up to
+  // maxEdits away.
+  public int[] findNeighborIds(String w) {
+    if (maxEdits > 1) {
+      return findIdsWithin(w);
+    }
+    int wl = w.length();
+    long[] hashes = new long[wl + 1];
+    int keyCount = keyHashes(w, hashes);
+    int[] found = new int[8];
+    int n = 0;
+
+    for (int k = 0; k < keyCount; k++) {
+      long key = pack(hashes[k], 0);
+      int i = lowerBound(key);
+      for (; i < entries.length && (entries[i] & ~idMask) == key; i++) {
+        int id = (int) (entries[i] & idMask);
+        String v = words.get(id);
+        int vl = v.length();
+        int ed = 0;
+        if (vl == wl) {
+          ed = Levenshtein.editDistanceEqual(w, v);
+        } else if (vl == wl + 1) {
+          ed = Levenshtein.editDistanceOffByOne(w, v);
+        } else if (vl == wl - 1) {
+          ed = Levenshtein.editDistanceOffByOne(v, w);
+        }
+        if (ed == 1 && !contains(found, n, id)) {
+          if (n == found.length) {
+            found = Arrays.copyOf(found, n * 2);
+          }
+          found[n++] = id;
+        }
+      }
+    }
+    return Arrays.copyOf(found, n);
+  }
+
+  // Past one edit a word shares keys with lots of other words, many of them more than once, so
+  // collect all of the candidates first and verify each one once.
+  private int[] findIdsWithin(String w) {
+    int wl = w.length();
+    long[] keys = uniqueKeyHashes(w, maxEdits);
+    int[] candidates = new int[64];
+    int n = 0;
+    for (long hash : keys) {
+      long key = pack(hash, 0);
+      for (int i = lowerBound(key); i < entries.length && (entries[i] & ~idMask) == key; i++) {
+        int id = (int) (entries[i] & idMask);
+        if (Math.abs(words.get(id).length() - wl) <= maxEdits) {
+          if (n == candidates.length) {
+            candidates = Arrays.copyOf(candidates, n * 2);
+          }
+          candidates[n++] = id;
+        }
+      }
+    }
+    Arrays.sort(candidates, 0, n);
+
+    int found = 0;
+    for (int i = 0; i < n; i++) {
+      int id = candidates[i];
+      if (i > 0 && id == candidates[i - 1]) {
+        continue;
+      }
+      int ed = Levenshtein.distanceAtMost(w, words.get(id), maxEdits);
+      if (ed > 0 && ed <= maxEdits) {
+        candidates[found++] = id; // Never passes i, so this is safe.
+      }
+    }
+    return Arrays.copyOf(candidates, found);
+  }
+
+  // Neighbor lists are short, so a linear check for duplicates is fine. Duplicates only show up on
+  // hash collisions.
+  private static boolean contains(int[] found, int n, int id) {
+    for (int i = 0; i < n; i++) {
+      if (found[i] == id) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private int lowerBound(long key) {
+    int lo = 0;
+    int hi = entries.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (entries[mid] < key) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  private static long pack(long hash, int id) {
+    return (hash & ~idMask) | id;
+  }
+
+  // Deleting any letter in a run of the same letter gives the same string, so only count the first.
+  private static int uniqueDeletionCount(String w) {
+    int c = 0;
+    for (int i = 0; i < w.length(); i++) {
+      if (i == 0 || w.charAt(i) != w.charAt(i - 1)) {
+        c++;
+      }
+    }
+    return c;
+  }
+
+  // Hash the word itself, and each unique single-letter deletion of it, into hashes[]. Returns the
+  // number of hashes. Uses a polynomial hash, so the hash of a deletion can be stitched together
+  // from a prefix hash and a suffix hash without building the string.
+  private static int keyHashes(String w, long[] hashes) {
+    int l = w.length();
+    long[] suffix = new long[l + 1]; // Hash of w[i..l)
+    long[] pow = new long[l + 1];
+    pow[0] = 1;
+    for (int i = 1; i <= l; i++) {
+      pow[i] = pow[i - 1] * prime;
+    }
+    for (int i = l - 1; i >= 0; i--) {
+      suffix[i] = w.charAt(i) * pow[l - 1 - i] + suffix[i + 1];
+    }
+
+    int n = 0;
+    hashes[n++] = finish(suffix[0], l);
+    long prefix = 0; // Hash of w[0..i)
+    for (int i = 0; i < l; i++) {
+      if (i == 0 || w.charAt(i) != w.charAt(i - 1)) {
+        hashes[n++] = finish(prefix * pow[l - 1 - i] + suffix[i + 1], l - 1);
+      }
+      prefix = prefix * prime + w.charAt(i);
+    }
+    return n;
+  }
+
+  // Every word's keys are made and de-duplicated on their own, in parallel, then packed and sorted
+  // just like the single edit keys.
+  private static long[] buildMultiEdit(List<String> words, int maxEdits) {
+    long[][] keys = new long[words.size()][];
+    IntStream.range(0, words.size()).parallel()
+        .forEach(id -> keys[id] = uniqueKeyHashes(words.get(id), maxEdits));
+    int total = 0;
+    for (long[] k : keys) {
+      total += k.length;
+    }
+    long[] e = new long[total];
+    int n = 0;
+    for (int id = 0; id < keys.length; id++) {
+      for (long hash : keys[id]) {
+        e[n++] = pack(hash, id);
+      }
+    }
+    Arrays.parallelSort(e);
+    return e;
+  }
+
+  // The most keys a word of length l can have with up to k deletions: l choose 0, plus l choose 1,
+  // etc., up to l choose k. Runs of the same letter make for fewer.
+  public static int keyCount(int l, int k) {
+    int count = 0;
+    long choose = 1;
+    for (int d = 0; d <= Math.min(k, l); d++) {
+      count += choose;
+      choose = choose * (l - d) / (d + 1);
+    }
+    return count;
+  }
+
+  // Hashes of w and every unique string made by deleting up to k of its letters, sorted.
+  private static long[] uniqueKeyHashes(String w, int k) {
+    int l = w.length();
+    char[][] buffers = new char[k + 1][l]; // One per level of deletion
+    w.getChars(0, l, buffers[0], 0);
+    long[] hashes = new long[keyCount(l, k)];
+    int n = deletionHashes(buffers, 0, l, 0, hashes, 0);
+
+    Arrays.sort(hashes, 0, n);
+    int unique = 0;
+    for (int i = 0; i < n; i++) {
+      if (i == 0 || hashes[i] != hashes[i - 1]) {
+        hashes[unique++] = hashes[i];
+      }
+    }
+    return Arrays.copyOf(hashes, unique);
+  }
+
+  // Add the hash of the first len chars of buffers[depth], then recurse on each deletion of it. Each
+  // set of positions is only deleted once, by only deleting at or after the last deletion, and the
+  // second and later letters of a run are skipped since they give the same strings as the first.
+  private static int deletionHashes(char[][] buffers, int depth, int len, int start, long[] hashes,
+      int n) {
+    char[] c = buffers[depth];
+    long h = 0;
+    for (int i = 0; i < len; i++) {
+      h = h * prime + c[i];
+    }
+    hashes[n++] = finish(h, len);
+    if (depth + 1 == buffers.length) {
+      return n;
+    }
+    char[] d = buffers[depth + 1];
+    for (int i = start; i < len; i++) {
+      if (i > start && c[i] == c[i - 1]) {
+        continue;
+      }
+      System.arraycopy(c, 0, d, 0, i);
+      System.arraycopy(c, i + 1, d, i, len - i - 1);
+      n = deletionHashes(buffers, depth + 1, len - 1, i, hashes, n);
+    }
+    return n;
+  }
+
+  // Mix in the length and scramble the bits, so the top bits we keep are well distributed.
+  private static long finish(long h, int length) {
+    long z = h ^ ((long) length * 0x9E3779B97F4A7C15L);
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+}
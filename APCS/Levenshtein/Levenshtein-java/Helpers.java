@@ -5,9 +5,13 @@
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Scanner;
 import java.util.function.BiFunction;
 
@@ -34,6 +38,53 @@ public class Helpers {
     return words;
   }
 
+  // Load the dictionary with a Scanner, then sort it and find the length starts, like we always
+  // have, vs. a WordArena, kept as is and turned into Strings. Reports how long each takes, and how
+  // much heap the words take once they're loaded, and checks they all give the same words.
+  public static void compareDictionaryLoaders(String filename, int lengthLimit) {
+    long baseHeap = usedHeapAfterGC();
+    long s = System.nanoTime();
+    ArrayList<String> scanned = loadDictionary(filename, lengthLimit);
+    scanned.sort(NeighborGraph.wordOrder);
+    List<String> saved = Levenshtein.words;
+    Levenshtein.words = scanned; // buildWordLengthStarts() works on Levenshtein.words
+    int[] starts = Levenshtein.buildWordLengthStarts(lengthLimit);
+    Levenshtein.words = saved;
+    double scannerMS = (System.nanoTime() - s) / 1_000_000.0;
+    long scannerHeap = usedHeapAfterGC() - baseHeap;
+
+    s = System.nanoTime();
+    WordArena arena = WordArena.load(filename, lengthLimit);
+    double arenaMS = (System.nanoTime() - s) / 1_000_000.0;
+    long arenaHeap = usedHeapAfterGC() - baseHeap - scannerHeap;
+
+    s = System.nanoTime();
+    ArrayList<String> strings = WordArena.load(filename, lengthLimit).toStringList();
+    double stringsMS = (System.nanoTime() - s) / 1_000_000.0;
+    long stringsHeap = usedHeapAfterGC() - baseHeap - scannerHeap - arenaHeap;
+
+    boolean same = scanned.equals(arena) && scanned.equals(strings)
+        && Arrays.equals(starts, Arrays.copyOf(arena.getLengthStarts(), starts.length));
+    System.out.format("Dictionary loaders, %,d words:\n", scanned.size());
+    System.out.format("  Scanner, sort, length starts: %,10.2fms, %,12d bytes retained\n",
+        scannerMS, scannerHeap);
+    System.out.format("  Mapped arena:                 %,10.2fms, %,12d bytes retained\n",
+        arenaMS, arenaHeap);
+    System.out.format("  Mapped arena to Strings:      %,10.2fms, %,12d bytes retained\n",
+        stringsMS, stringsHeap);
+    System.out.format("  %s, %d buckets re-sorted\n\n",
+        same ? "Same words and length starts" : "DIFFERENT WORDS", arena.getResortedBuckets());
+  }
+
+  // Heap in use after a few rounds of GC. Not exact, but good enough to compare big things.
+  private static long usedHeapAfterGC() {
+    Runtime r = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return r.totalMemory() - r.freeMemory();
+  }
+
   // A little helper to dump a 2D array of ints.
   public static void dumpArray(int[][] a) {
     for (int i = 0; i < a.length; i++) {
@@ -118,6 +169,197 @@ public class Helpers {
     System.out.println();
   }
 
+  // Compare per-query latency of the selected neighbor finder vs. the length-bucket scan, over every
+  // n'th word, and make sure they find the same neighbors.
+  public static void compareNeighborFinders(List<String> words, int n) {
+    int queries = 0;
+    int mismatches = 0;
+    long scanNanos = 0;
+    long finderNanos = 0;
+    for (int i = 0; i < words.size(); i += n) {
+      String w = words.get(i);
+      List<String> scanned = new ArrayList<>();
+      long s = System.nanoTime();
+      Levenshtein.lazyBuildNeighborMap(w, scanned);
+      long m = System.nanoTime();
+      List<String> found = new ArrayList<>();
+      Levenshtein.findNeighbors(w, found);
+      long e = System.nanoTime();
+      scanNanos += m - s;
+      finderNanos += e - m;
+      queries++;
+      if (scanned.size() != found.size() || !new HashSet<>(scanned).containsAll(found)) {
+        mismatches++;
+      }
+    }
+    System.out.format(
+        "Neighbor queries for %,d words: scan avg %,.2fµs, %s avg %,.2fµs, %d mismatches\n\n",
+        queries, scanNanos / 1000.0 / queries, Levenshtein.neighborFinder,
+        finderNanos / 1000.0 / queries, mismatches);
+  }
+
+  // Compare the lazy neighbor scan with the cheater functions vs. packed words vs. distanceAtMost()
+  // with k = 1, over every n'th word. They all look at the same words, so the difference is all in
+  // the check, and they must find the same neighbors.
+  public static void compareNeighborChecks(List<String> words, int n) {
+    PackedWords packed = Levenshtein.packedWords;
+    Levenshtein.packedWords = null; // Just the cheater functions for lazyBuildNeighborMap()
+    PackedWords packedWords = packed != null ? packed : new PackedWords(words);
+    int queries = 0;
+    int mismatches = 0;
+    long cheaterNanos = 0;
+    long packedNanos = 0;
+    long bandedNanos = 0;
+    for (int i = 0; i < words.size(); i += n) {
+      String w = words.get(i);
+      List<String> cheater = new ArrayList<>();
+      long s = System.nanoTime();
+      Levenshtein.lazyBuildNeighborMap(w, cheater);
+      long m1 = System.nanoTime();
+      List<String> packedFound = new ArrayList<>();
+      packedWords.findNeighbors(w, packedFound);
+      long m2 = System.nanoTime();
+      List<String> banded = new ArrayList<>();
+      Levenshtein.scanNeighborsWithin(w, 1, banded);
+      long e = System.nanoTime();
+      cheaterNanos += m1 - s;
+      packedNanos += m2 - m1;
+      bandedNanos += e - m2;
+      queries++;
+      if (!cheater.equals(banded) || !cheater.equals(packedFound)) {
+        mismatches++;
+      }
+    }
+    Levenshtein.packedWords = packed;
+    System.out.format("Neighbor scans for %,d words: cheater avg %,.2fµs, packed avg %,.2fµs, "
+            + "banded avg %,.2fµs, %d mismatches\n\n", queries, cheaterNanos / 1000.0 / queries,
+        packedNanos / 1000.0 / queries, bandedNanos / 1000.0 / queries, mismatches);
+  }
+
+  // Compare the scalar and SWAR kernels of a LengthBucketMatrix, and one at a time packed words, on
+  // the equal length part of the neighbor scan over every n'th word. The kernels must find exactly
+  // the same words, and the same words as the packed scan.
+  public static void compareEqualLengthKernels(List<String> words, int n) {
+    LengthBucketMatrix matrix = new LengthBucketMatrix(words, LengthBucketMatrix.Kernel.Swar);
+    PackedWords packed = new PackedWords(words);
+    int queries = 0;
+    int mismatches = 0;
+    long packedNanos = 0;
+    long scalarNanos = 0;
+    long swarNanos = 0;
+    for (int i = 0; i < words.size(); i += n) {
+      String w = words.get(i);
+      int l = w.length();
+      long s = System.nanoTime();
+      List<String> found = new ArrayList<>();
+      packed.findNeighbors(w, matrix.bucketStart(l), matrix.bucketStart(l + 1), found);
+      long m1 = System.nanoTime();
+      int[] scalar = matrix.findSubstitutionsScalar(w, 0);
+      long m2 = System.nanoTime();
+      int[] swar = matrix.findSubstitutionsSwar(w, 0);
+      long e = System.nanoTime();
+      packedNanos += m1 - s;
+      scalarNanos += m2 - m1;
+      swarNanos += e - m2;
+      queries++;
+      if (!Arrays.equals(scalar, swar) || found.size() != swar.length) {
+        mismatches++;
+      }
+    }
+    System.out.format("Equal length kernels for %,d words: packed avg %,.2fµs, "
+            + "scalar avg %,.2fµs, SWAR avg %,.2fµs, %d mismatches\n\n", queries,
+        packedNanos / 1000.0 / queries, scalarNanos / 1000.0 / queries,
+        swarNanos / 1000.0 / queries, mismatches);
+  }
+
+  // Time the fork/join graph build with the cheater functions, then with packed words. Both must
+  // find exactly the same edges.
+  public static void comparePackedBuild() {
+    PackedWords packed = Levenshtein.packedWords;
+    int threadCount = Runtime.getRuntime().availableProcessors();
+
+    Levenshtein.packedWords = null;
+    long s = System.nanoTime();
+    NeighborGraph cheater = LevenshteinParallel.buildFullGraphForkJoin(threadCount);
+    long m = System.nanoTime();
+    Levenshtein.packedWords = packed;
+    NeighborGraph packedGraph = LevenshteinParallel.buildFullGraphForkJoin(threadCount);
+    long e = System.nanoTime();
+
+    boolean same = Arrays.equals(cheater.offsets, packedGraph.offsets)
+        && Arrays.equals(cheater.edges, packedGraph.edges);
+    System.out.format("Graph builds: cheater %,.2fms, packed %,.2fms, %.2fx, %,d edges, %s\n\n",
+        (m - s) / 1_000_000.0, (e - m) / 1_000_000.0, (double) (m - s) / (e - m),
+        packedGraph.edgeCount(), same ? "same graphs" : "DIFFERENT GRAPHS");
+  }
+
+  // Compare shortest distance queries between n random pairs of words with neighbors: a reused
+  // OrdinalBFS vs. a new HashSet<String> of visited words per query, like the string searches do.
+  // Both walk the same graph, so the difference is all in the visited set.
+  public static void compareBFSVisitedSets(NeighborGraph g, int n) {
+    ArrayList<Integer> connected = new ArrayList<>();
+    for (int id = 0; id < g.size(); id++) {
+      if (g.degree(id) > 0) {
+        connected.add(id);
+      }
+    }
+    Random rand = new Random(1122);
+    int[][] pairs = new int[n][];
+    for (int i = 0; i < n; i++) {
+      pairs[i] = new int[]{connected.get(rand.nextInt(connected.size())),
+          connected.get(rand.nextInt(connected.size()))};
+    }
+
+    OrdinalBFS bfs = Levenshtein.getOrdinalBFS();
+    int mismatches = 0;
+    long visitedWords = 0;
+    long bitsetNanos = 0;
+    long hashSetNanos = 0;
+    for (int[] p : pairs) {
+      long s = System.nanoTime();
+      int d1 = bfs.search(p[0], p[1]);
+      long m = System.nanoTime();
+      int d2 = hashSetBFS(g, p[0], p[1]);
+      long e = System.nanoTime();
+      bitsetNanos += m - s;
+      hashSetNanos += e - m;
+      visitedWords += bfs.getVisitedCount();
+      if (d1 != d2) {
+        mismatches++;
+      }
+    }
+    System.out.format("Shortest distances for %,d random pairs, avg %,d words visited: OrdinalBFS "
+            + "avg %,.2fµs, HashSet<String> avg %,.2fµs, %d mismatches\n\n", n, visitedWords / n,
+        bitsetNanos / 1000.0 / n, hashSetNanos / 1000.0 / n, mismatches);
+  }
+
+  private static int hashSetBFS(NeighborGraph g, int from, int to) {
+    if (from == to) {
+      return 0;
+    }
+    HashSet<String> visited = new HashSet<>();
+    ArrayDeque<Integer> queue = new ArrayDeque<>();
+    visited.add(g.word(from));
+    queue.add(from);
+    int d = 0;
+    while (!queue.isEmpty()) {
+      d++;
+      for (int levelSize = queue.size(); levelSize > 0; levelSize--) {
+        int id = queue.remove();
+        for (int e = g.offsets[id]; e < g.offsets[id + 1]; e++) {
+          int nid = g.edges[e];
+          if (visited.add(g.word(nid))) {
+            if (nid == to) {
+              return d;
+            }
+            queue.add(nid);
+          }
+        }
+      }
+    }
+    return -1;
+  }
+
   // Helper to learn about the properties of the neighbor maps.
   public static void neighborAnalysis(Map<String, List<String>> neighbors, int wordLengthLimit) {
     System.out.format("%,d total words with any neighbors\n", neighbors.size());
@@ -154,4 +396,37 @@ public class Helpers {
 //		Helpers.dumpArray(m);
   }
 
+  // The same analysis for a NeighborGraph, plus how much memory it takes.
+  public static void neighborAnalysis(NeighborGraph g, int wordLengthLimit) {
+    int withNeighbors = 0;
+    int kmin = Integer.MAX_VALUE;
+    int kmax = 0;
+    long ktotal = 0;
+    int nmin = Integer.MAX_VALUE;
+    int nmax = 0;
+
+    for (int id = 0; id < g.size(); id++) {
+      int nlen = g.degree(id);
+      if (nlen == 0) {
+        continue;
+      }
+      withNeighbors++;
+      int klen = g.wordLength(id);
+      kmin = Math.min(kmin, klen);
+      kmax = Math.max(kmax, klen);
+      ktotal += klen;
+      nmin = Math.min(nmin, nlen);
+      nmax = Math.max(nmax, nlen);
+    }
+
+    System.out.format("%,d total words with any neighbors\n", withNeighbors);
+    System.out.format("Min/avg/max word size: %d/%.2f/%d\n", kmin,
+        (double) ktotal / withNeighbors, kmax);
+    System.out.format("Min/avg/max neighbor count: %d/%.2f/%d\n", nmin,
+        (double) g.edgeCount() / withNeighbors, nmax);
+    System.out.format("Graph size: %,d words, %,d edges, %,d bytes\n", g.size(),
+        g.edgeCount(), g.sizeInBytes());
+    g.getComponents().printAnalysis();
+  }
+
 }
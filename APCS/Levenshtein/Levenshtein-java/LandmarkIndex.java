@@ -0,0 +1,342 @@
+// Copyright (c) Michael M. Magruder (https://github.com/mikemag)
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+// A* search guided by landmarks, aka ALT (A*, Landmarks, and the Triangle inequality).
+//
+// A BFS looking for a word at distance d has to look at every word closer than d first, in every
+// direction, even the ones which lead away from the target. A* looks at the most promising words
+// first: those where the distance so far, plus a guess at the distance left, is smallest. As long
+// as the guess never overestimates, the first time we reach the target we've found a shortest path.
+//
+// Landmarks give us good guesses. We pick a few words, and BFS from each of them to get the
+// distance from it to every other word. Then for any word v, target t, and landmark L, the triangle
+// inequality says d(v, t) >= |d(L, t) - d(L, v)|. Take the best of those over all the landmarks and
+// we have a lower bound on the distance left that's often quite close to the real thing, especially
+// when the target is "behind" a landmark as seen from v. The bound is also consistent (it changes
+// by at most 1 across an edge), so A* never has to expand a word twice.
+//
+// Distances in the word graph are small, so each landmark's distances are stored as one byte per
+// word: 370k bytes each. All of the landmark BFSs are independent, so they run in parallel.
+//
+// Landmarks on the edges of the graph, and far from each other, work best. The classic way to pick
+// them is "farthest point": each new landmark is the word farthest from all the landmarks so far.
+// But that needs a BFS from each landmark before we can pick the next, one at a time. Instead, we
+// BFS from random seed words in parallel first, and use the seeds as stand-in landmarks: the same
+// triangle inequality gives a lower bound on the distance between any two words, which is plenty
+// good enough to spread the real landmarks out. Then the real landmarks' BFSs run in parallel too.
+// Only the largest component gets landmarks; searches elsewhere get no help from them, but those
+// components are tiny anyway.
+public class LandmarkIndex {
+
+  private static final int unreachable = 255;
+
+  private final NeighborGraph graph;
+  private final int[] landmarks;
+  private final byte[][] distances; // distances[l][id] is from landmark l to word id
+  private final long buildNanos;
+
+  public LandmarkIndex(NeighborGraph g, int landmarkCount, long seed) {
+    long startTime = System.nanoTime();
+    this.graph = g;
+    int n = g.size();
+
+    ComponentIndex components = g.getComponents();
+    int largest = 0;
+    for (int c = 1; c < components.getComponentCount(); c++) {
+      if (components.getComponentSize(c) > components.getComponentSize(largest)) {
+        largest = c;
+      }
+    }
+
+    Random random = new Random(seed);
+    boolean[] chosen = new boolean[n]; // No seed twice
+    int[] seeds = new int[landmarkCount];
+    for (int i = 0; i < landmarkCount; i++) {
+      int s;
+      do {
+        s = random.nextInt(n);
+      } while (components.getLabel(s) != largest || chosen[s]);
+      seeds[i] = s;
+      chosen[s] = true;
+    }
+    byte[][] seedDistances = new byte[landmarkCount][];
+    IntStream.range(0, landmarkCount).parallel()
+        .forEach(i -> seedDistances[i] = distancesFrom(g, seeds[i]));
+
+    // Farthest point, by the seeds' estimate of distance. minEstimate[v] is how close v is to the
+    // nearest landmark so far, and we start with the word farthest from the first seed.
+    int[] minEstimate = new int[n];
+    for (int v = 0; v < n; v++) {
+      minEstimate[v] = components.getLabel(v) == largest ? seedDistances[0][v] & 0xFF : -1;
+    }
+    landmarks = new int[landmarkCount];
+    for (int i = 0; i < landmarkCount; i++) {
+      int best = 0;
+      for (int v = 1; v < n; v++) {
+        if (minEstimate[v] > minEstimate[best]) {
+          best = v;
+        }
+      }
+      int l = landmarks[i] = best;
+      IntStream.range(0, n).parallel().forEach(v -> {
+        if (minEstimate[v] > 0) {
+          int estimate = 0;
+          for (byte[] d : seedDistances) {
+            estimate = Math.max(estimate, Math.abs((d[l] & 0xFF) - (d[v] & 0xFF)));
+          }
+          minEstimate[v] = Math.min(minEstimate[v], estimate);
+        }
+      });
+      minEstimate[l] = -1;
+    }
+    distances = new byte[landmarkCount][];
+    IntStream.range(0, landmarkCount).parallel()
+        .forEach(i -> distances[i] = distancesFrom(g, landmarks[i]));
+
+    buildNanos = System.nanoTime() - startTime;
+  }
+
+  // A plain BFS giving the distance from one word to every other word.
+  private static byte[] distancesFrom(NeighborGraph g, int from) {
+    byte[] d = new byte[g.size()];
+    Arrays.fill(d, (byte) unreachable);
+    int[] queue = new int[g.size()];
+    int tail = 0;
+    d[from] = 0;
+    queue[tail++] = from;
+    for (int head = 0; head < tail; head++) {
+      int v = queue[head];
+      int nd = Math.min((d[v] & 0xFF) + 1, unreachable - 1);
+      for (int e = g.offsets[v]; e < g.offsets[v + 1]; e++) {
+        int u = g.edges[e];
+        if ((d[u] & 0xFF) == unreachable) {
+          d[u] = (byte) nd;
+          queue[tail++] = u;
+        }
+      }
+    }
+    return d;
+  }
+
+  public int getLandmarkCount() {
+    return landmarks.length;
+  }
+
+  public long getSizeInBytes() {
+    return (long) landmarks.length * graph.size();
+  }
+
+  public long getBuildNanos() {
+    return buildNanos;
+  }
+
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (int l : landmarks) {
+      sb.append(sb.length() == 0 ? "" : ", ").append(graph.word(l));
+    }
+    return String.format("%d landmarks in %,.2fms, %,d bytes: %s", landmarks.length,
+        buildNanos / 1_000_000.0, getSizeInBytes(), sb);
+  }
+
+  // Each thread gets its own search state, reused for every query, like OrdinalBFS.
+  private final ThreadLocal<Search> searches = ThreadLocal.withInitial(Search::new);
+
+  public Search getSearch() {
+    return searches.get();
+  }
+
+  // The bookkeeping for one A* search at a time. Like OrdinalBFS, per-word state is only valid if
+  // its stamp matches the current epoch, so nothing is cleared between queries.
+  //
+  // Words waiting to be expanded sit in buckets by their estimated total distance f = g + h. The
+  // heuristic is consistent, so f never goes down as we go, and we can just work through the
+  // buckets in order. A word can be put in a bucket again when we find a shorter way to it, and the
+  // old entry is skipped when we get to it.
+  public final class Search {
+
+    private final int[] g = new int[graph.size()]; // Distance from the start so far
+    private final int[] h = new int[graph.size()]; // Lower bound on the distance to the target
+    private final int[] stamp = new int[graph.size()];
+    private final int[] closedStamp = new int[graph.size()];
+    private final int[] targetDistances = new int[landmarks.length];
+    private int[][] buckets = new int[64][];
+    private int[] bucketSizes = new int[64];
+    private int epoch = 0;
+    private int expanded = 0;
+    private int touched = 0;
+
+    // The length of the shortest path between two words, or -1 if there isn't one.
+    public int search(int from, int to) {
+      epoch++;
+      expanded = 0;
+      touched = 0;
+      Arrays.fill(bucketSizes, 0);
+      if (from < 0 || to < 0) {
+        return -1;
+      }
+      for (int l = 0; l < landmarks.length; l++) {
+        targetDistances[l] = distances[l][to] & 0xFF;
+      }
+
+      touch(from, 0);
+      push(h[from], from);
+      for (int f = h[from]; f < buckets.length; f++) {
+        while (bucketSizes[f] > 0) {
+          // Last in, first out, so among equal f we go deep first, towards the target.
+          int v = buckets[f][--bucketSizes[f]];
+          if (closedStamp[v] == epoch || g[v] + h[v] != f) {
+            continue; // Already expanded, or there's a shorter entry for it.
+          }
+          closedStamp[v] = epoch;
+          expanded++;
+          if (v == to) {
+            return g[v];
+          }
+
+          int ng = g[v] + 1;
+          for (int e = graph.offsets[v]; e < graph.offsets[v + 1]; e++) {
+            int u = graph.edges[e];
+            if (stamp[u] != epoch) {
+              touch(u, ng);
+            } else if (closedStamp[u] == epoch || ng >= g[u]) {
+              continue;
+            } else {
+              g[u] = ng;
+            }
+            push(ng + h[u], u);
+          }
+        }
+      }
+      return -1;
+    }
+
+    private void touch(int v, int gv) {
+      stamp[v] = epoch;
+      g[v] = gv;
+      h[v] = lowerBound(v);
+      touched++;
+    }
+
+    private int lowerBound(int v) {
+      int best = 0;
+      for (int l = 0; l < landmarks.length; l++) {
+        int dt = targetDistances[l];
+        int dv = distances[l][v] & 0xFF;
+        if (dt != unreachable && dv != unreachable) {
+          best = Math.max(best, Math.abs(dt - dv));
+        }
+      }
+      return best;
+    }
+
+    private void push(int f, int v) {
+      if (f >= buckets.length) {
+        buckets = Arrays.copyOf(buckets, f * 2);
+        bucketSizes = Arrays.copyOf(bucketSizes, f * 2);
+      }
+      int[] b = buckets[f];
+      if (b == null) {
+        b = buckets[f] = new int[64];
+      } else if (bucketSizes[f] == b.length) {
+        b = buckets[f] = Arrays.copyOf(b, b.length * 2);
+      }
+      b[bucketSizes[f]++] = v;
+    }
+
+    // Words taken off the queue and expanded, in the last search.
+    public int getExpanded() {
+      return expanded;
+    }
+
+    // Words we computed a distance for, expanded or not, in the last search.
+    public int getTouched() {
+      return touched;
+    }
+  }
+
+  // Run the given pairs, plus some random ones from the largest component, with both BFS and A*.
+  // Check that they agree on every length, and show how much less work A* does.
+  public void compareWithBFS(String[][] pairs, int randomPairs, long seed) {
+    System.out.println(this);
+    System.out.format("%-28s %6s %12s %12s %12s %10s %10s %8s\n", "Pair", "Length", "BFS visited",
+        "A* expanded", "A* touched", "BFS ms", "A* ms", "Savings");
+    OrdinalBFS bfs = Levenshtein.getOrdinalBFS();
+    Search alt = getSearch();
+    ComponentIndex components = graph.getComponents();
+    boolean allMatched = true;
+
+    for (String[] p : pairs) {
+      int from = graph.getId(p[0]);
+      int to = graph.getId(p[1]);
+      if (from < 0 || to < 0 || !components.connected(from, to)) {
+        System.out.format("%-28s %6s\n", p[0] + " -> " + p[1], "none");
+        continue;
+      }
+      allMatched &= compareOne(p[0] + " -> " + p[1], bfs, alt, from, to, true) != null;
+    }
+
+    // Random pairs in the same component, in bulk.
+    Random random = new Random(seed);
+    long bfsVisited = 0;
+    long altTouched = 0;
+    long altExpanded = 0;
+    double bfsMS = 0;
+    double altMS = 0;
+    int ran = 0;
+    while (ran < randomPairs) {
+      int from = random.nextInt(graph.size());
+      int to = random.nextInt(graph.size());
+      if (graph.degree(from) == 0 || !components.connected(from, to)) {
+        continue;
+      }
+      double[] r = compareOne(null, bfs, alt, from, to, false);
+      if (r == null) {
+        allMatched = false;
+        continue;
+      }
+      bfsVisited += (long) r[0];
+      altExpanded += (long) r[1];
+      altTouched += (long) r[2];
+      bfsMS += r[3];
+      altMS += r[4];
+      ran++;
+    }
+    if (ran > 0) {
+      System.out.format("%-28s %6s %,12d %,12d %,12d %,10.3f %,10.3f %7.1fx\n",
+          String.format("Avg of %,d random pairs", ran), "", bfsVisited / ran, altExpanded / ran,
+          altTouched / ran, bfsMS / ran, altMS / ran, (double) bfsVisited / altTouched);
+    }
+    System.out.println(allMatched ? "A* lengths matched BFS for every pair.\n"
+        : "A* lengths DID NOT match BFS!\n");
+  }
+
+  // Returns BFS visited, A* expanded, A* touched, BFS ms, A* ms, or null if the lengths differ.
+  private static double[] compareOne(String name, OrdinalBFS bfs, Search alt, int from, int to,
+      boolean print) {
+    long startTime = System.nanoTime();
+    int bfsLength = bfs.search(from, to);
+    double bfsMS = (System.nanoTime() - startTime) / 1_000_000.0;
+    startTime = System.nanoTime();
+    int altLength = alt.search(from, to);
+    double altMS = (System.nanoTime() - startTime) / 1_000_000.0;
+
+    if (bfsLength != altLength) {
+      System.out.format("Length mismatch from %d to %d: BFS %d, A* %d\n", from, to, bfsLength,
+          altLength);
+      return null;
+    }
+    if (print) {
+      System.out.format("%-28s %6d %,12d %,12d %,12d %,10.3f %,10.3f %7.1fx\n", name, bfsLength,
+          bfs.getVisitedCount(), alt.getExpanded(), alt.getTouched(), bfsMS, altMS,
+          (double) bfs.getVisitedCount() / alt.getTouched());
+    }
+    return new double[]{bfs.getVisitedCount(), alt.getExpanded(), alt.getTouched(), bfsMS, altMS};
+  }
+}
@@ -0,0 +1,213 @@
+// Copyright (c) Michael M. Magruder (https://github.com/mikemag)
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+
+// Compare a word against every word of the same length, 8 at a time.
+//
+// Most of a neighbor scan is spent comparing a word against the rest of its length bucket, one
+// candidate after another, and each comparison is a little loop over letters which usually stops
+// after the first or second letter. That's a lot of short loops, branches, and String lookups for
+// very little work each.
+//
+// Instead, we store each length bucket "sideways", as a structure of arrays: first letter 0 of
+// every word, then letter 1 of every word, etc. Then comparing the query against a column is the
+// same operation on a whole run of bytes, which is exactly what SIMD hardware is for. We do it in
+// blocks of 8 words, so a block's column is just a long, and a handful of ordinary long operations
+// compares 8 letters at once (SIMD within a register, or SWAR):
+//
+// - XOR the column with the query's letter repeated in all 8 bytes. Matching bytes become zero.
+// - Turn each non-zero byte into a 1 in that byte: add 0x7F to the low 7 bits of each byte, which
+//   carries into the top bit if any were set, OR in the top bit itself, and shift it down.
+// - Add that to 8 running mismatch counts, one per byte. Words are at most 29 letters, so a count
+//   never carries into the next byte.
+// - Once every count in the block is 2 or more, none of these 8 words can be neighbors, so we skip
+//   the rest of the block's columns. For most blocks that's after 2 or 3 columns.
+//
+// At the end, a block's counts which are exactly 1 are the neighbors. We find the zero bytes of
+// counts ^ 0x0101..01 with the same trick as above, and each one is a word to emit.
+//
+// Blocks are laid out one after another, each with all of its columns, so the kernel reads memory
+// strictly in order. The bytes are read 8 at a time through a VarHandle view of the byte[], which
+// the JIT turns into plain 8-byte loads.
+//
+// Why not the Vector API (jdk.incubator.vector)? It's still an incubator module, so every compile
+// and every run of this whole project would need --add-modules jdk.incubator.vector, and there's no
+// build file here to hide that in. A long already gives us 8 lanes of the same kernel, needs
+// nothing special, and the Vector API version of this would be the same loop with wider vectors.
+//
+// The scalar kernel reads the same bytes one at a time and must always give the same answers.
+//
+// Letters are stored as bytes, so dictionary words must be Latin-1. Byte 0 is the padding at the end
+// of a bucket's last block.
+public class LengthBucketMatrix {
+
+  enum Kernel {
+    Scalar, // One candidate, and one letter, at a time
+    Swar // 8 candidates at a time, see above
+  }
+
+  private static final VarHandle longView =
+      MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+  private static final long ones = 0x0101010101010101L;
+  private static final long low7 = 0x7F7F7F7F7F7F7F7FL;
+  private static final long highs = 0x8080808080808080L;
+  private static final long twos = 0x7E7E7E7E7E7E7E7EL; // Sets the high bit of bytes >= 2
+
+  private final Kernel kernel;
+  private final int[] bucketStarts; // Id of the first word of each length, and one past the end
+  private final byte[][] tiles; // Per length: block b, column c, word t at ((b * L + c) * 8) + t
+  private final long buildNanos;
+
+  // words must be sorted by length.
+  public LengthBucketMatrix(List<String> words, Kernel kernel) {
+    long startTime = System.nanoTime();
+    this.kernel = kernel;
+    int n = words.size();
+    int longest = words.isEmpty() ? 0 : words.get(n - 1).length();
+    bucketStarts = new int[longest + 2];
+    for (int l = 0, i = 0; l < bucketStarts.length; l++) {
+      while (i < n && words.get(i).length() < l) {
+        i++;
+      }
+      bucketStarts[l] = i;
+    }
+
+    tiles = new byte[longest + 1][];
+    for (int l = 0; l <= longest; l++) {
+      int start = bucketStarts[l];
+      int blocks = (bucketStarts[l + 1] - start + 7) >>> 3;
+      byte[] tile = new byte[blocks * l * 8];
+      for (int i = start; i < bucketStarts[l + 1]; i++) {
+        String w = words.get(i);
+        int b = (i - start) >>> 3;
+        int t = (i - start) & 7;
+        for (int c = 0; c < l; c++) {
+          char ch = w.charAt(c);
+          if (ch == 0 || ch > 0xFF) {
+            throw new IllegalArgumentException("Can't store '" + w + "' as bytes");
+          }
+          tile[((b * l + c) << 3) + t] = (byte) ch;
+        }
+      }
+      tiles[l] = tile;
+    }
+    buildNanos = System.nanoTime() - startTime;
+  }
+
+  public long getBuildNanos() {
+    return buildNanos;
+  }
+
+  public long getSizeInBytes() {
+    long s = 0;
+    for (byte[] t : tiles) {
+      s += t.length;
+    }
+    return s;
+  }
+
+  public Kernel getKernel() {
+    return kernel;
+  }
+
+  // The id of the first word of the given length, i.e., the start of its bucket.
+  public int bucketStart(int length) {
+    return bucketStarts[Math.min(length, bucketStarts.length - 1)];
+  }
+
+  // Ids of the words the same length as q which differ from it in exactly one letter, skipping any
+  // with an id less than fromId.
+  public int[] findSubstitutions(String q, int fromId) {
+    return kernel == Kernel.Swar ? findSubstitutionsSwar(q, fromId)
+        : findSubstitutionsScalar(q, fromId);
+  }
+
+  public int[] findSubstitutionsSwar(String q, int fromId) {
+    int l = q.length();
+    if (l >= tiles.length) {
+      return new int[0];
+    }
+    byte[] tile = tiles[l];
+    int start = bucketStarts[l];
+    int end = bucketStarts[l + 1];
+    long[] query = new long[l]; // Each letter repeated in all 8 bytes
+    for (int c = 0; c < l; c++) {
+      query[c] = queryByte(q.charAt(c)) * ones;
+    }
+
+    int[] found = new int[8];
+    int n = 0;
+    int blocks = (end - start + 7) >>> 3;
+    for (int b = Math.max(0, fromId - start) >>> 3; b < blocks; b++) {
+      long counts = 0;
+      int base = b * l;
+      for (int c = 0; c < l; c++) {
+        long x = (long) longView.get(tile, (base + c) << 3) ^ query[c];
+        counts += ((((x & low7) + low7) | x) >>> 7) & ones;
+        if (((counts + twos) & highs) == highs) {
+          break; // Every word in the block has 2 or more mismatches.
+        }
+      }
+
+      long y = counts ^ ones; // Zero bytes are the words with exactly one mismatch.
+      long hits = ~(((y & low7) + low7) | y) & highs;
+      while (hits != 0) {
+        int id = start + (b << 3) + (Long.numberOfTrailingZeros(hits) >>> 3);
+        hits &= hits - 1;
+        if (id < end && id >= fromId) { // Padding words never count.
+          if (n == found.length) {
+            found = Arrays.copyOf(found, n * 2);
+          }
+          found[n++] = id;
+        }
+      }
+    }
+    return Arrays.copyOf(found, n);
+  }
+
+  public int[] findSubstitutionsScalar(String q, int fromId) {
+    int l = q.length();
+    if (l >= tiles.length) {
+      return new int[0];
+    }
+    byte[] tile = tiles[l];
+    int start = bucketStarts[l];
+    int end = bucketStarts[l + 1];
+    byte[] query = new byte[l];
+    for (int c = 0; c < l; c++) {
+      query[c] = (byte) queryByte(q.charAt(c));
+    }
+
+    int[] found = new int[8];
+    int n = 0;
+    for (int id = Math.max(start, fromId); id < end; id++) {
+      int b = (id - start) >>> 3;
+      int t = (id - start) & 7;
+      int mismatches = 0;
+      for (int c = 0; c < l && mismatches < 2; c++) {
+        if (tile[((b * l + c) << 3) + t] != query[c]) {
+          mismatches++;
+        }
+      }
+      if (mismatches == 1) {
+        if (n == found.length) {
+          found = Arrays.copyOf(found, n * 2);
+        }
+        found[n++] = id;
+      }
+    }
+    return Arrays.copyOf(found, n);
+  }
+
+  // A letter which can't be in the matrix becomes 0, which never matches a real letter.
+  private static long queryByte(char c) {
+    return c > 0xFF ? 0 : c;
+  }
+}
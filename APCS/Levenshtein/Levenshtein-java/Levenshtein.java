@@ -5,14 +5,17 @@
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.Scanner;
+import java.util.function.Function;
 
 // AP CS Levenshtein distance project.
 //
@@ -68,12 +71,62 @@ public class Levenshtein {
   private static final boolean runPerfTests = false;
   private static final boolean runSamplePairs = false;
 
+  private static final String dictionaryFilename = "words_alpha.txt";
   private static final int wordLengthLimit = 30; // The longest word in words_alpha.txt is 29.
+  private static final boolean mappedDictionary = true; // See WordArena.java
+
+  // Words are neighbors when they're at most this many edits apart. Everything was written for 1,
+  // and 1 is still the fast path everywhere. Above 1, every builder has each word find its own
+  // neighbors (see findNeighbors()), and you really want the DeletionIndex finder for full builds.
+  static final int neighborDistance = 1;
+  // Check for neighbors with distanceAtMost() even at distance 1, instead of the cheater functions.
+  // It's the same code for every k, but slower, see the perf tests.
+  static final boolean bandedNeighborCheck = false;
+  // Compare short words packed into longs, see PackedWords.java. Used by the lazy scan and the
+  // fork/join graph build.
+  static final boolean packedNeighborCheck = true && neighborDistance == 1 && !bandedNeighborCheck;
+  // How the packed checks compare equal length words, see LengthBucketMatrix.java. Null for one at
+  // a time with the packed words.
+  static final LengthBucketMatrix.Kernel equalLengthKernel = LengthBucketMatrix.Kernel.Swar;
+  // Keep the words in the WordArena and only make Strings on demand, rather than making them all up
+  // front. Saves ~16MB of heap, but every neighbor we find becomes a new String, and the sample
+  // searches take 7-15% longer, so it's off by default. Only sensible with packed checks.
+  private static final boolean arenaWords =
+      false && mappedDictionary && packedNeighborCheck && equalLengthKernel != null;
+  private static final String graphFilename =
+      "words_alpha" + (neighborDistance > 1 ? "_k" + neighborDistance : "") + ".graph";
 
   private static final boolean buildFullMap = false;
   private static final boolean parallelFullBuild = true;
+  static final boolean fullMapAsGraph = false && buildFullMap; // See NeighborGraph.java
+  private static final boolean persistGraph = true && fullMapAsGraph; // See NeighborGraphFile.java
   private static final boolean parallelLazyBFS = true && !buildFullMap;
+  private static final boolean parallelGraphBFS = true && fullMapAsGraph;
+  private static final boolean pathCountingBFS = true; // See ShortestPathDAG.java
   private static final boolean letTheUserPlay = true;
+  private static final boolean runBatch = false; // See BatchQueries.java
+  private static final String batchInputFilename = "pairs.txt"; // Made up if it doesn't exist
+  private static final String batchOutputFilename = "pairs_out.txt";
+  private static final boolean batchWritePaths = false;
+  private static final long neighborCacheBudgetBytes = 64L << 20; // Lazy only, see NeighborCache
+  private static final boolean runLandmarkTests = false && fullMapAsGraph; // See LandmarkIndex.java
+  private static final int landmarkCount = 16;
+  private static final boolean runFuzzyLookupTests = false; // See BKTree.java
+
+  // How to find the neighbors of a word, for both the full and lazy builds. See
+  // generateAndProbeNeighbors().
+  enum NeighborFinder {
+    Scan, // Compare against every word of length L-1, L, and L+1 (L-k thru L+k past distance 1)
+    GenerateAndProbe, // Generate every string one edit away and look it up in the dictionary
+    DeletionIndex // Look up shared deletions, see DeletionIndex.java
+  }
+
+  static final NeighborFinder neighborFinder = NeighborFinder.Scan;
+
+  // True when each word finds all of its own neighbors with findNeighbors(), rather than the
+  // builders scanning the half matrix. The half matrix scans only know about distance 1.
+  static final boolean findNeighborsPerWord =
+      neighborFinder != NeighborFinder.Scan || neighborDistance > 1 || bandedNeighborCheck;
 
   // First attempt based on the pseudo code at https://en.wikipedia.org/wiki/Levenshtein_distance.
   // This is the classic non-recursive version, implemented as obviously as possible.
@@ -166,6 +219,262 @@ public class Levenshtein {
     return d[w1l][w2l];
   }
 
+  // All of the versions above fill in the whole matrix, one cell at a time. Myers' bit-parallel
+  // algorithm computes a whole column at once, using the bits of a long as the rows.
+  //
+  // The trick is that neighboring cells in the matrix differ by only -1, 0, or +1. So instead of
+  // the values, we keep a column's vertical differences as two bitmasks: pv has a 1 for each row
+  // that's one more than the row above it, and mv for each that's one less. The next column's
+  // differences can then be worked out from this column's, plus a mask of which rows of w1 match
+  // the next character of w2, with a handful of ANDs, ORs, shifts, and one add. The add is the
+  // clever part: its carries ripple down the column, which is how a match in one row affects all
+  // the rows below it. The distance is the bottom row, which we track by adding up the horizontal
+  // difference in the last row as we go.
+  //
+  // This is G. Myers, "A fast bit-vector algorithm for approximate string matching based on dynamic
+  // programming" (1999), as reformulated for edit distance by H. Hyyrö (2001). It's O(n) in the
+  // length of w2 for words up to 64 characters, regardless of how different they are. Longer words
+  // use several longs per column, see editDistanceMyersBlocked().
+  //
+  // The match masks for each character (peq) are built once per call, and only for the characters
+  // in w1, so we keep a small table per thread and clear just the entries we set.
+  //
+  // Runtime for this is ~0.0629µs, 2.3x faster than the best of the classic versions above, and
+  // the gap grows with the length of the words.
+  public static int editDistanceMyers(String w1, String w2) {
+    if (w1.length() > w2.length()) { // The shorter word fits in fewer bits.
+      String t = w1;
+      w1 = w2;
+      w2 = t;
+    }
+    int m = w1.length();
+    int n = w2.length();
+    if (m == 0) {
+      return n;
+    }
+    if (m > 64) {
+      return editDistanceMyersBlocked(w1, w2);
+    }
+
+    long[] peq = myersPeq.get();
+    for (int i = 0; i < m; i++) {
+      char c = w1.charAt(i);
+      if (c < peq.length) {
+        peq[c] |= 1L << i;
+      }
+    }
+    int score = myersColumns(peq, w1, w2);
+    for (int i = 0; i < m; i++) {
+      char c = w1.charAt(i);
+      if (c < peq.length) {
+        peq[c] = 0;
+      }
+    }
+    return score;
+  }
+
+  // The heart of editDistanceMyers(), given the match masks for w1, which is 1 to 64 characters.
+  private static int myersColumns(long[] peq, String w1, String w2) {
+    int m = w1.length();
+    int n = w2.length();
+    long pv = -1L; // The first column is 0, 1, 2, ..., so every row is +1.
+    long mv = 0;
+    long last = 1L << (m - 1);
+    int score = m;
+    for (int j = 0; j < n; j++) {
+      char c = w2.charAt(j);
+      long eq = c < peq.length ? peq[c] : myersMatchMask(w1, 0, m, c);
+      long xv = eq | mv;
+      long xh = (((eq & pv) + pv) ^ pv) | eq;
+      long ph = mv | ~(xh | pv);
+      long mh = pv & xh;
+      if ((ph & last) != 0) {
+        score++;
+      } else if ((mh & last) != 0) {
+        score--;
+      }
+      ph = (ph << 1) | 1; // The top row goes up by one each column.
+      mh <<= 1;
+      pv = mh | ~(xv | ph);
+      mv = ph & xv;
+    }
+    return score;
+  }
+
+  // Myers with one word fixed, for comparing one word against many, like a fuzzy lookup does. The
+  // match masks are built once, up front, rather than on every call. See BKTree.java.
+  public static final class MyersPattern {
+
+    private final String pattern;
+    private final long[] peq = new long[128];
+
+    public MyersPattern(String pattern) {
+      this.pattern = pattern;
+      for (int i = 0; i < pattern.length() && i < 64; i++) {
+        char c = pattern.charAt(i);
+        if (c < peq.length) {
+          peq[c] |= 1L << i;
+        }
+      }
+    }
+
+    public int distance(String w) {
+      if (pattern.isEmpty()) {
+        return w.length();
+      }
+      if (pattern.length() > 64) {
+        return editDistanceMyers(pattern, w);
+      }
+      return myersColumns(peq, pattern, w);
+    }
+  }
+
+  // For words longer than 64 characters, each column is split into blocks of 64 rows. Each block is
+  // computed just like above, except the horizontal difference coming out of the bottom of one
+  // block is carried into the top of the next, the same way the top row's +1 is carried in above.
+  //
+  // Runtime for this is ~1.5908µs, for two 99 character words.
+  public static int editDistanceMyersBlocked(String w1, String w2) {
+    int m = w1.length();
+    int n = w2.length();
+    int blocks = (m + 63) >>> 6;
+
+    // peq[b][c] is the match mask for character c in block b. Long words are rare enough that we
+    // just allocate these.
+    long[][] peq = new long[blocks][128];
+    for (int i = 0; i < m; i++) {
+      char c = w1.charAt(i);
+      if (c < 128) {
+        peq[i >>> 6][c] |= 1L << i;
+      }
+    }
+    long[] pvs = new long[blocks];
+    long[] mvs = new long[blocks];
+    Arrays.fill(pvs, -1L);
+    long last = 1L << ((m - 1) & 63); // Within the last block
+
+    int score = m;
+    for (int j = 0; j < n; j++) {
+      char c = w2.charAt(j);
+      int hin = 1;
+      for (int b = 0; b < blocks; b++) {
+        long eq = c < 128 ? peq[b][c] : myersMatchMask(w1, b << 6, Math.min(m, (b + 1) << 6), c);
+        long pv = pvs[b];
+        long mv = mvs[b];
+        long xv = eq | mv;
+        if (hin < 0) {
+          eq |= 1;
+        }
+        long xh = (((eq & pv) + pv) ^ pv) | eq;
+        long ph = mv | ~(xh | pv);
+        long mh = pv & xh;
+
+        long out = b == blocks - 1 ? last : 1L << 63;
+        int hout = (ph & out) != 0 ? 1 : (mh & out) != 0 ? -1 : 0;
+
+        ph <<= 1;
+        mh <<= 1;
+        if (hin < 0) {
+          mh |= 1;
+        } else if (hin > 0) {
+          ph |= 1;
+        }
+        pvs[b] = mh | ~(xv | ph);
+        mvs[b] = ph & xv;
+        hin = hout;
+      }
+      score += hin;
+    }
+    return score;
+  }
+
+  // The match mask for a character outside of peq's table, the slow way.
+  private static long myersMatchMask(String w, int from, int to, char c) {
+    long eq = 0;
+    for (int i = from; i < to; i++) {
+      if (w.charAt(i) == c) {
+        eq |= 1L << (i - from);
+      }
+    }
+    return eq;
+  }
+
+  private static final ThreadLocal<long[]> myersPeq = ThreadLocal.withInitial(() -> new long[128]);
+
+  // Is the distance between two words at most k, and if so, what is it? Everything above works out
+  // the exact distance, no matter how far apart the words are, but when we're looking for neighbors
+  // we only care about small distances, and almost every pair of words isn't close at all.
+  //
+  // Two observations let us do a lot less work than the full matrix:
+  //
+  // 1. Cell (i, j) is at least |i - j|, since it takes that many insertions or deletions just to
+  //    make the lengths match. So any cell more than k off the diagonal is already over k, and we
+  //    only need the band of 2k+1 cells around it in each row. Words more than k apart in length
+  //    can't be within k at all, so they're turned away before we start.
+  //
+  // 2. Every cell is at least the smallest cell in the row above it. Once a whole row is over k,
+  //    the answer is too, so we can stop right there. For unrelated words this usually happens
+  //    within the first few rows.
+  //
+  // Anything over k comes back as k+1. This is O(k * n) rather than O(n^2), and two rows are kept
+  // per thread, so it doesn't allocate.
+  //
+  // Runtime for this is ~0.1201µs at k = 1 for a pair one substitution apart, and ~0.0941µs at k = 2
+  // for Saturday/Sunday. That's a bit better than the full matrix versions for short words, and
+  // the gap grows with the length of the words, but the cheater functions are still ~6x faster at
+  // k = 1. A lazy scan of the dictionary at k = 1 takes ~10.0ms per word with this vs. ~5.0ms with
+  // the cheaters, so they're still the default there, see bandedNeighborCheck.
+  public static int distanceAtMost(String w1, String w2, int k) {
+    int w1l = w1.length();
+    int w2l = w2.length();
+    int over = k + 1;
+    if (Math.abs(w1l - w2l) > k) {
+      return over;
+    }
+    int[][] rows = bandedRows.get();
+    if (rows[0].length <= w2l + 1) {
+      rows = new int[2][w2l + 2];
+      bandedRows.set(rows);
+    }
+    int[] prev = rows[0];
+    int[] cur = rows[1];
+
+    // The first row is just insertions. The cell right past the band is off limits to the next row.
+    int hi = Math.min(w2l, k);
+    for (int j = 0; j <= hi; j++) {
+      prev[j] = j;
+    }
+    prev[hi + 1] = over;
+
+    for (int i = 1; i <= w1l; i++) {
+      int lo = Math.max(1, i - k);
+      hi = Math.min(w2l, i + k);
+      char c = w1.charAt(i - 1);
+      int left = lo == 1 ? Math.min(i, over) : over; // Cell (i, lo - 1)
+      cur[lo - 1] = left;
+      int rowMin = left;
+      for (int j = lo; j <= hi; j++) {
+        int v = prev[j - 1] + (c == w2.charAt(j - 1) ? 0 : 1); // substitution
+        v = Math.min(v, prev[j] + 1); // deletion
+        v = Math.min(v, left + 1); // insertion
+        cur[j] = v;
+        left = v;
+        rowMin = Math.min(rowMin, v);
+      }
+      if (rowMin > k) {
+        return over;
+      }
+      cur[hi + 1] = over;
+      int[] t = prev;
+      prev = cur;
+      cur = t;
+    }
+    return Math.min(prev[w2l], over);
+  }
+
+  private static final ThreadLocal<int[][]> bandedRows =
+      ThreadLocal.withInitial(() -> new int[2][wordLengthLimit + 2]);
+
   // Static pre-allocated memory for various implementations of the edit
   // distance function.
   private static int[][] StaticDistanceArray = null;
@@ -299,9 +608,14 @@ public class Levenshtein {
   //   - Sorted words & stop early:  411.54s (6.86min)
   //
   // Current runtime of this is ~308.11s (5.13min)
-  public static ArrayList<String> words = null;
+  public static List<String> words = null;
   public static HashMap<String, List<String>> neighbors = new HashMap<>();
 
+  // When fullMapAsGraph is set, the builders add each pair of neighbors (by word id) here instead of
+  // to the neighbors map, and the result is turned into a NeighborGraph.
+  public static NeighborGraph.EdgeList graphEdges = null;
+  public static NeighborGraph graph = null;
+
   private static void buildFullNeighborMap() {
     long totalChecks = 0;
     long skippedChecks = 0;
@@ -333,6 +647,10 @@ public class Levenshtein {
         }
         if (ed == 1) {
           totalNeighbors++;
+          if (graphEdges != null) {
+            graphEdges.add(i, j);
+            continue;
+          }
           if (nl == null) {
             nl = new ArrayList<>();
             neighbors.put(w1, nl);
@@ -371,10 +689,21 @@ public class Levenshtein {
 
   // This builds the neighbor map "lazily", one row at a time and on-demand. This allows us to skip
   // building the full map in favor of only building the pieces we need to perform a given search.
-  // The map is essentially a cache.
+  // The map is essentially a cache, and in lazy mode it really is one, see NeighborCache.java.
   public static int[] wordLengthStarts = null;
+  public static NeighborCache neighborCache = null;
+  public static ComponentIndex.Lazy lazyComponents = null; // Labeled as searches find them
+  public static PackedWords packedWords = null;
 
   public static void lazyBuildNeighborMap(String w1, List<String> nl) {
+    if (neighborDistance > 1 || bandedNeighborCheck) {
+      scanNeighborsWithin(w1, neighborDistance, nl);
+      return;
+    }
+    if (packedWords != null) {
+      packedWords.findNeighbors(w1, nl);
+      return;
+    }
     int w1l = w1.length();
     int wordsLen = words.size();
     for (int j = wordLengthStarts[w1l - 1]; j < wordsLen; j++) {
@@ -400,9 +729,140 @@ public class Levenshtein {
     }
   }
 
+  // The same scan for neighbors up to k edits away. Words more than k apart in length can't be
+  // within k edits, so we only look at lengths L-k thru L+k, and distanceAtMost() gives up on each
+  // of those as soon as it knows the pair is too far apart. That's still a scan of a big chunk of
+  // the dictionary for every word, though, so for a full build at k > 1 use the DeletionIndex.
+  public static void scanNeighborsWithin(String w1, int k, List<String> nl) {
+    int w1l = w1.length();
+    int wordsLen = words.size();
+    for (int j = wordLengthStarts[Math.max(0, w1l - k)]; j < wordsLen; j++) {
+      String w2 = words.get(j);
+      if (w2.length() - w1l > k) {
+        break; // Sorted by length, so everything past j is too long.
+      }
+      int ed = distanceAtMost(w1, w2, k);
+      if (ed > 0 && ed <= k) {
+        nl.add(w2);
+      }
+    }
+  }
+
+  // Everything above compares a word against a whole lot of other words, and almost all of those
+  // comparisons fail. We can flip the problem around: generate every string which is one edit away
+  // from the word, and look each one up in a hash set of the dictionary. For a word of length L
+  // there are L deletions, 25L substitutions, and 26(L+1) insertions, so ~53L+26 lookups. That's a
+  // few hundred hash lookups vs. tens of thousands of comparisons.
+  //
+  // Some edits produce the same string, e.g., deleting either 'o' from "door". Those are skipped so
+  // each neighbor is only added once.
+  //
+  // This takes the full neighbor map build from minutes down to a few seconds.
+  public static HashSet<String> dictionary = null;
+
+  public static void generateAndProbeNeighbors(String w, List<String> nl) {
+    char[] c = w.toCharArray();
+    int l = c.length;
+
+    // Deletions. Deleting any char in a run of the same char gives the same result.
+    for (int i = 0; i < l; i++) {
+      if (i > 0 && c[i] == c[i - 1]) {
+        continue;
+      }
+      String d = new String(c, 0, i) + new String(c, i + 1, l - i - 1);
+      if (dictionary.contains(d)) {
+        nl.add(d);
+      }
+    }
+
+    // Substitutions.
+    for (int i = 0; i < l; i++) {
+      char orig = c[i];
+      for (char ch = 'a'; ch <= 'z'; ch++) {
+        if (ch == orig) {
+          continue;
+        }
+        c[i] = ch;
+        String d = new String(c);
+        if (dictionary.contains(d)) {
+          nl.add(d);
+        }
+      }
+      c[i] = orig;
+    }
+
+    // Insertions. Inserting a char right after the same char is the same as inserting it before.
+    char[] ins = new char[l + 1];
+    System.arraycopy(c, 0, ins, 1, l);
+    for (int i = 0; i <= l; i++) {
+      // ins holds c[0..i) followed by a gap at i, followed by c[i..l).
+      for (char ch = 'a'; ch <= 'z'; ch++) {
+        if (i > 0 && c[i - 1] == ch) {
+          continue;
+        }
+        ins[i] = ch;
+        String d = new String(ins);
+        if (dictionary.contains(d)) {
+          nl.add(d);
+        }
+      }
+      if (i < l) {
+        ins[i] = c[i]; // Slide the gap one to the right.
+      }
+    }
+  }
+
+  public static DeletionIndex deletionIndex = null;
+
+  // Find the neighbors of a single word with whichever method we've selected. Generating and probing
+  // only does one edit, since there are ~(53L)^2 / 2 strings two edits away, so past that it falls
+  // back to the scan.
+  public static void findNeighbors(String w, List<String> nl) {
+    if (neighborFinder == NeighborFinder.GenerateAndProbe && neighborDistance == 1) {
+      generateAndProbeNeighbors(w, nl);
+    } else if (neighborFinder == NeighborFinder.DeletionIndex) {
+      deletionIndex.findNeighbors(w, nl);
+    } else {
+      lazyBuildNeighborMap(w, nl);
+    }
+  }
+
+  // Build the full neighbor map by finding each word's neighbors directly, e.g., by generating and
+  // probing. There's no half-matrix trick here, each word finds all of its own neighbors.
+  private static void buildFullNeighborMapPerWord() {
+    long startTime = System.nanoTime();
+    long totalNeighbors = 0;
+    for (int i = 0; i < words.size(); i++) {
+      String w = words.get(i);
+      List<String> nl = new ArrayList<>();
+      findNeighbors(w, nl);
+      if (graphEdges != null) {
+        addGraphEdges(i, nl, graphEdges);
+      } else if (!nl.isEmpty()) {
+        neighbors.put(w, nl);
+      }
+      totalNeighbors += nl.size();
+    }
+
+    double elapsedMS = (System.nanoTime() - startTime) / 1_000_000.0;
+    System.out.format("Done.\nElapsed time %,.2fs, %,d total neighbors\n\n", elapsedMS / 1000,
+        totalNeighbors / 2);
+  }
+
+  // Add the edges from word id to each of its neighbors, but only for neighbors with a larger id so
+  // each pair is only added once.
+  public static void addGraphEdges(int id, List<String> nl, NeighborGraph.EdgeList edges) {
+    String w = words.get(id);
+    for (String n : nl) {
+      if (NeighborGraph.wordOrder.compare(w, n) < 0) {
+        edges.add(id, Collections.binarySearch(words, n, NeighborGraph.wordOrder));
+      }
+    }
+  }
+
   // Build a map of where each group of words of a given length start. Used by
-  // lazyBuildNeighborMap() to skip the left side of the matrix.
-  private static int[] buildWordLengthStarts(int wordLengthLimit) {
+  // lazyBuildNeighborMap() to skip the left side of the matrix. WordArena gives us these for free.
+  static int[] buildWordLengthStarts(int wordLengthLimit) {
     int[] a = new int[wordLengthLimit];
 
     int lastWordLength = 0;
@@ -432,10 +892,16 @@ public class Levenshtein {
 
     Node parent;
     String word;
+    int id; // Word id when searching a NeighborGraph, otherwise -1
 
     Node(Node parent, String word) {
+      this(parent, word, -1);
+    }
+
+    Node(Node parent, String word, int id) {
       this.parent = parent;
       this.word = word;
+      this.id = id;
     }
   }
 
@@ -458,10 +924,18 @@ public class Levenshtein {
   // Traverse the neighbor graph from w1 to w2, finding all shortest paths. Goes breadth-first.
   // Trims out loops to make it a tree a level at a time as it goes.
   private static void findPathBFS(String w1, String w2) {
-    if (parallelLazyBFS) {
+    if (pathCountingBFS) {
+      findPathsDAG(w1, w2);
+      return;
+    }
+    if (parallelLazyBFS || parallelGraphBFS) {
       new LevenshteinParallel.LazyFindPathBFS(w1, w2).findPath();
       return;
     }
+    if (graph != null) {
+      findPathBFSGraph(w1, w2);
+      return;
+    }
 
     System.out.format("Find path from '%s' to '%s'\n", w1, w2);
     long startTime = System.nanoTime();
@@ -517,14 +991,125 @@ public class Levenshtein {
         totalMinPaths);
   }
 
+  // Find all shortest paths by building a ShortestPathDAG rather than a tree of Nodes, then count
+  // them and print them one at a time. Over the graph if we have it, otherwise lazily, finding each
+  // level's neighbors in parallel when we can.
+  private static void findPathsDAG(String w1, String w2) {
+    System.out.format("Find path from '%s' to '%s'\n", w1, w2);
+    long startTime = System.nanoTime();
+
+    ShortestPathDAG dag;
+    if (graph != null) {
+      dag = ShortestPathDAG.search(graph, getOrdinalBFS(), graph.getId(w1), graph.getId(w2));
+    } else {
+      dag = ShortestPathDAG.search(w1, w2, Levenshtein::getNeighborsWithLazyBuild,
+          parallelLazyBFS && neighborCache != null, lazyComponents);
+    }
+    double searchMS = (System.nanoTime() - startTime) / 1_000_000.0;
+
+    if (dag.getPathCount() > 0) {
+      System.out.println("Shortest path lengths: " + dag.getLength());
+      // Copy-paste to http://www.webgraphviz.com/
+      System.out.format("digraph %s_%s_%d{concentrate=true;\n", w1, w2, dag.getLength());
+      for (Iterator<List<String>> it = dag.paths(); it.hasNext(); ) {
+        List<String> p = it.next();
+        printPath(p.subList(0, p.size() - 1), p.get(p.size() - 1));
+      }
+      System.out.println("}");
+    }
+    System.out.format("Done %,.2fms, considered %,d words for %,d total minimum paths, "
+        + "%,d words on them\n\n", searchMS, dag.getExploredWords(), dag.getPathCount(),
+        dag.getDAGWords());
+  }
+
+  // Each thread gets its own OrdinalBFS for searching the graph, reused for every query.
+  private static final ThreadLocal<OrdinalBFS> ordinalBFS =
+      ThreadLocal.withInitial(() -> new OrdinalBFS(graph));
+
+  public static OrdinalBFS getOrdinalBFS() {
+    return ordinalBFS.get();
+  }
+
+  // The same search over a NeighborGraph, using word ids rather than strings. Loops are trimmed with
+  // a reusable visited bitset rather than a set of strings, so there's no hashing at all. See
+  // OrdinalBFS.java.
+  private static void findPathBFSGraph(String w1, String w2) {
+    System.out.format("Find path from '%s' to '%s'\n", w1, w2);
+    long startTime = System.nanoTime();
+
+    int totalWords = 0;
+    int totalMinPaths = 0;
+    int startId = graph.getId(w1);
+    int targetId = graph.getId(w2);
+    Queue<Node> leavesQueue = new ArrayDeque<>();
+    OrdinalBFS parents = getOrdinalBFS(); // To remove loops.
+    parents.begin();
+    int level = 0;
+    Node levelSentinel = new Node(null, null); // Marks the end of each level.
+    leavesQueue.add(levelSentinel);
+    if (startId >= 0) {
+      leavesQueue.add(new Node(null, w1, startId));
+    }
+
+    while (!leavesQueue.isEmpty()) {
+      Node n = leavesQueue.remove();
+      if (n == levelSentinel) {
+        // Stop when we can't find anything, or if we found paths on the last level.
+        if (leavesQueue.isEmpty() || totalMinPaths > 0) {
+          break;
+        }
+        for (Node queuedNode : leavesQueue) {
+          parents.visit(queuedNode.id, level);
+        }
+        level++;
+        leavesQueue.add(levelSentinel);
+        continue;
+      }
+      totalWords++;
+
+      for (int e = graph.offsets[n.id]; e < graph.offsets[n.id + 1]; e++) {
+        int id = graph.edges[e];
+        if (id == targetId) {
+          List<String> p = buildPath(n);
+          if (totalMinPaths == 0) {
+            System.out.println("Shortest path lengths: " + p.size());
+            // Copy-paste to http://www.webgraphviz.com/
+            System.out.format("digraph %s_%s_%d{concentrate=true;\n", w1, w2, p.size());
+          }
+          totalMinPaths++;
+          printPath(p, w2);
+        }
+        if (!parents.isVisited(id)) {
+          leavesQueue.add(new Node(n, graph.word(id), id));
+        }
+      }
+    }
+
+    if (totalMinPaths > 0) {
+      System.out.println("}");
+    }
+    double searchMS = (System.nanoTime() - startTime) / 1_000_000.0;
+    System.out.format("Done %,.2fms, considered %,d words for %,d total minimum paths\n\n",
+        searchMS,
+        totalWords,
+        totalMinPaths);
+  }
+
   // A small helper to get us the neighbor list for a word, and build its neighbors lazily if
   // necessary. Used by findPathBFS() and the user input code down in main().
   private static List<String> getNeighborsWithLazyBuild(String w) {
+    if (graph != null) {
+      int id = graph.getId(w);
+      return id >= 0 ? graph.getNeighborWords(id) : new ArrayList<>();
+    }
+    if (neighborCache != null) {
+      return neighborCache.get(w);
+    }
     List<String> nl = neighbors.get(w);
     if (nl == null) {
       nl = new ArrayList<>();
       neighbors.put(w, nl);
-      lazyBuildNeighborMap(w, nl);
+      findNeighbors(w, nl);
     }
     return nl;
   }
@@ -533,6 +1118,115 @@ public class Levenshtein {
     return 0;
   }
 
+  // Search w1 to w2 over a tiny dictionary of a, b, and c, where only a and b are neighbors, after
+  // a search from a to c has labeled a's component. x isn't in the dictionary, but b is its
+  // neighbor, so x can reach a and b even though it's in no component.
+  private static int lazyComponentsTestFunc(String w1, String w2) {
+    List<String> dictionary = List.of("a", "b", "c");
+    Map<String, List<String>> edges = Map.of("a", List.of("b"), "b", List.of("a"), "x",
+        List.of("b"));
+    Function<String, List<String>> f = w -> edges.getOrDefault(w, Collections.emptyList());
+    ComponentIndex.Lazy components = new ComponentIndex.Lazy(dictionary::contains);
+    ShortestPathDAG.search("a", "c", f, false, components);
+    return ShortestPathDAG.search(w1, w2, f, false, components).getLength();
+  }
+
+  // Load and sort the dictionary, then build whatever the options ask for.
+  private static void loadAndBuild() {
+    if (runPerfTests) {
+      Helpers.compareDictionaryLoaders(dictionaryFilename, wordLengthLimit);
+    }
+
+    // Found a dictionary at https://github.com/dwyl/english-words
+    if (mappedDictionary) {
+      // Loaded already sorted, and with the length starts. See WordArena.java.
+      WordArena arena = WordArena.load(dictionaryFilename, wordLengthLimit);
+      words = arenaWords ? arena : arena.toStringList();
+      wordLengthStarts = arena.getLengthStarts();
+      System.out.format("Loaded %,d words from %s in %,.2fms, %,d bytes, %s\n\n", words.size(),
+          dictionaryFilename, arena.getLoadNanos() / 1_000_000.0, arena.getSizeInBytes(),
+          arenaWords ? "kept in the arena" : "as Strings");
+    } else {
+      words = Helpers.loadDictionary(dictionaryFilename, wordLengthLimit);
+
+      // Sort the words by length. See description of buildFullNeighborMap(). Within a length
+      // they're sorted alphabetically, so a word's position makes a good id, see NeighborGraph.
+      long startTime = System.nanoTime();
+      Collections.sort(words, NeighborGraph.wordOrder);
+      double sortMS = (System.nanoTime() - startTime) / 1_000_000.0;
+      System.out.format("Sorted words in %,.2fms\n\n", sortMS);
+      wordLengthStarts = buildWordLengthStarts(
+          wordLengthLimit); // For lazy neighbor finding in all cases, and per word full builds.
+    }
+    if (packedNeighborCheck) {
+      LengthBucketMatrix matrix = null;
+      if (equalLengthKernel != null) {
+        matrix = new LengthBucketMatrix(words, equalLengthKernel);
+        System.out.format("Built length bucket matrix in %,.2fms, %,d bytes, %s kernel\n",
+            matrix.getBuildNanos() / 1_000_000.0, matrix.getSizeInBytes(), equalLengthKernel);
+      }
+      packedWords = new PackedWords(words, matrix);
+      System.out.format("Packed %,d of %,d words in %,.2fms\n\n", packedWords.getPackedCount(),
+          words.size(), packedWords.getBuildNanos() / 1_000_000.0);
+    }
+
+    if (neighborFinder == NeighborFinder.GenerateAndProbe && neighborDistance == 1) {
+      dictionary = new HashSet<>(words);
+    } else if (neighborFinder == NeighborFinder.DeletionIndex) {
+      deletionIndex = new DeletionIndex(words, neighborDistance);
+      System.out.format("Built deletion index in %,.2fms, %,d entries, %,d bytes\n\n",
+          deletionIndex.getBuildNanos() / 1_000_000.0, deletionIndex.getEntryCount(),
+          deletionIndex.getSizeInBytes());
+    }
+
+    if (buildFullMap && parallelFullBuild && LevenshteinParallel.runBuildScalingTests) {
+      LevenshteinParallel.runBuildScalingTests();
+    }
+
+    // Build the full neighbor map all at once (serial or parallel), or set up for lazy work.
+    if (buildFullMap) {
+      if (fullMapAsGraph) {
+        graphEdges = new NeighborGraph.EdgeList();
+      }
+      if (parallelFullBuild) {
+        LevenshteinParallel.buildFullNeighborMapParallel();
+      } else if (findNeighborsPerWord) {
+        buildFullNeighborMapPerWord();
+      } else {
+        buildFullNeighborMap();
+      }
+      if (fullMapAsGraph) {
+        if (graph == null) { // The lock free parallel build makes the graph itself.
+          graph = NeighborGraph.fromEdges(words, graphEdges);
+        }
+        graphEdges = null;
+        Helpers.neighborAnalysis(graph, wordLengthLimit);
+        if (persistGraph) {
+          NeighborGraphFile.save(graph, graphFilename, dictionaryFilename, wordLengthLimit);
+        }
+      } else {
+        Helpers.neighborAnalysis(neighbors, wordLengthLimit);
+      }
+    } else {
+      neighborCache = new NeighborCache(neighborCacheBudgetBytes, Levenshtein::findNeighbors);
+    }
+    if (!fullMapAsGraph) {
+      lazyComponents = new ComponentIndex.Lazy(
+          w -> Collections.binarySearch(words, w, NeighborGraph.wordOrder) >= 0);
+    }
+
+    if (runPerfTests && neighborFinder != NeighborFinder.Scan) {
+      Helpers.compareNeighborFinders(words, 100);
+    }
+    if (runPerfTests && neighborDistance == 1 && !bandedNeighborCheck) {
+      Helpers.compareNeighborChecks(words, 100);
+      Helpers.compareEqualLengthKernels(words, 100);
+    }
+    if (runPerfTests && packedNeighborCheck && buildFullMap && parallelFullBuild) {
+      Helpers.comparePackedBuild();
+    }
+  }
+
   public static void main(String[] args) {
     editDistanceStaticSetup(8); // Static setup large enough for all functional and perf tests.
 
@@ -547,6 +1241,35 @@ public class Levenshtein {
     Helpers.Test.Args[] cheaterCombinedTests = {new Helpers.Test.Args("dog", "dot", 1),
         new Helpers.Test.Args("dog", "dog", 0), new Helpers.Test.Args("Saturday", "Sunday", 0),
         new Helpers.Test.Args("sitting", "kitten", 3)};
+    // Myers handles any words, including ones too long for a single long.
+    String alphabet = "abcdefghijklmnopqrstuvwxyz";
+    String longWord = alphabet.repeat(3) + "abcdefghijklmnopqrstu"; // 99 chars
+    Helpers.Test.Args[] myersTests = {new Helpers.Test.Args("dog", "dot", 1),
+        new Helpers.Test.Args("dog", "dog", 0), new Helpers.Test.Args("Saturday", "Sunday", 3),
+        new Helpers.Test.Args("sitting", "kitten", 3), new Helpers.Test.Args("", "abc", 3),
+        new Helpers.Test.Args("abc", "", 3), new Helpers.Test.Args("dog", "acat", 4),
+        new Helpers.Test.Args(alphabet, alphabet.repeat(2), 26),
+        new Helpers.Test.Args("a".repeat(64), "a".repeat(63) + "b", 1),
+        new Helpers.Test.Args(longWord, longWord.replace('q', 'x'), 4), // 4 q's
+        new Helpers.Test.Args("x" + "a".repeat(70), "a".repeat(70) + "x", 2),
+        new Helpers.Test.Args("ab".repeat(40), "ba".repeat(40), 2),
+        new Helpers.Test.Args("a".repeat(100), "b".repeat(100), 100),
+        new Helpers.Test.Args("a".repeat(65), "a".repeat(130), 65),
+        new Helpers.Test.Args("Saturday", "Saturday" + "z".repeat(92), 92)};
+    // Anything over k comes back as k + 1.
+    Helpers.Test.Args[] bandedK1Tests = {new Helpers.Test.Args("dog", "dot", 1),
+        new Helpers.Test.Args("dog", "dog", 0), new Helpers.Test.Args("Saturday", "Sunday", 2),
+        new Helpers.Test.Args("sitting", "kitten", 2), new Helpers.Test.Args("dog", "acat", 2),
+        new Helpers.Test.Args("dog", "doog", 1), new Helpers.Test.Args("", "a", 1),
+        new Helpers.Test.Args("abc", "", 2)};
+    Helpers.Test.Args[] bandedK2Tests = {new Helpers.Test.Args("dog", "dot", 1),
+        new Helpers.Test.Args("dog", "dog", 0), new Helpers.Test.Args("Saturday", "Sunday", 3),
+        new Helpers.Test.Args("sitting", "kitten", 3), new Helpers.Test.Args("dog", "dgo", 2),
+        new Helpers.Test.Args("dog", "adoga", 2), new Helpers.Test.Args("", "ab", 2),
+        new Helpers.Test.Args("abc", "", 3),
+        new Helpers.Test.Args("ab".repeat(40), "ba".repeat(40), 2),
+        new Helpers.Test.Args("x" + "a".repeat(70), "a".repeat(70) + "x", 2),
+        new Helpers.Test.Args(longWord, longWord.replace('q', 'x'), 3)};
     Helpers.Test[] tests = new Helpers.Test[]{
         new Helpers.Test("Empty function", Levenshtein::emptyTestFunc, null,
             new Helpers.Test.Args("Empty", "Empty", 10_000_000_000L)),
@@ -557,6 +1280,16 @@ public class Levenshtein {
         new Helpers.Test("Levenshtein hoisted string lengths",
             Levenshtein::editDistanceHoistedLengths,
             commonTests, new Helpers.Test.Args("Saturday", "Sunday", 20_000_000)),
+        new Helpers.Test("Myers bit-parallel", Levenshtein::editDistanceMyers, myersTests,
+            new Helpers.Test.Args("Saturday", "Sunday", 100_000_000)),
+        new Helpers.Test("Myers bit-parallel, blocked", Levenshtein::editDistanceMyersBlocked,
+            null, new Helpers.Test.Args(longWord, longWord.replace('q', 'x'), 2_000_000)),
+        new Helpers.Test("Banded, k = 1", (w1, w2) -> distanceAtMost(w1, w2, 1), bandedK1Tests,
+            new Helpers.Test.Args("Saturday", "Satuxday", 100_000_000)),
+        new Helpers.Test("Banded, k = 2", (w1, w2) -> distanceAtMost(w1, w2, 2), bandedK2Tests,
+            new Helpers.Test.Args("Saturday", "Sunday", 100_000_000)),
+        new Helpers.Test("Banded, k = 2, long words", (w1, w2) -> distanceAtMost(w1, w2, 2), null,
+            new Helpers.Test.Args(longWord, longWord.replace('q', 'x'), 20_000_000)),
         new Helpers.Test("Cheater equal lengths", Levenshtein::editDistanceEqual, equalSizeTests,
             new Helpers.Test.Args("Saturday", "Satuxday", 200_000_000)),
         new Helpers.Test("Cheater off by one", Levenshtein::editDistanceOffByOne, offByOneTests,
@@ -566,7 +1299,16 @@ public class Levenshtein {
 
     };
 
-    if (!Helpers.runTests(tests)) {
+    // Lazy components over a tiny dictionary, see lazyComponentsTestFunc().
+    Helpers.Test.Args[] lazyComponentTests = {new Helpers.Test.Args("a", "b", 1),
+        new Helpers.Test.Args("a", "c", -1), new Helpers.Test.Args("c", "a", -1),
+        new Helpers.Test.Args("x", "b", 1), new Helpers.Test.Args("x", "a", 2),
+        new Helpers.Test.Args("x", "c", -1)};
+    Helpers.Test[] componentTests = new Helpers.Test[]{
+        new Helpers.Test("Lazy components", Levenshtein::lazyComponentsTestFunc,
+            lazyComponentTests, null)};
+
+    if (!Helpers.runTests(tests) || !Helpers.runTests(componentTests)) {
       System.out.println("Some tests failed!");
       System.exit(-1);
     }
@@ -575,66 +1317,65 @@ public class Levenshtein {
       Helpers.runPerfTests(tests);
     }
 
-    // Found a dictionary at https://github.com/dwyl/english-words
-    words = Helpers.loadDictionary("words_alpha.txt", wordLengthLimit);
-
-    // Sort the words by length. See description of buildFullNeighborMap().
-    long startTime = System.nanoTime();
-    Collections.sort(words, new Comparator<String>() {
-      @Override
-      public int compare(String a, String b) {
-        return a.length() - b.length();
-      }
-    });
-    double sortMS = (System.nanoTime() - startTime) / 1_000_000.0;
-    System.out.format("Sorted words in %,.2fms\n\n", sortMS);
-
-    // Build the full neighbor map all at once (serial or parallel), or set up for lazy work.
-    if (buildFullMap) {
-      if (parallelFullBuild) {
-        LevenshteinParallel.buildFullNeighborMapParallel();
-      } else {
-        buildFullNeighborMap();
-      }
-      Helpers.neighborAnalysis(neighbors, wordLengthLimit);
+    // A saved graph, if we have a good one, saves us from loading and building anything. See
+    // NeighborGraphFile.java.
+    if (persistGraph) {
+      graph = NeighborGraphFile.load(graphFilename, dictionaryFilename, wordLengthLimit);
+    }
+    if (graph != null) {
+      words = graph.words;
+      Helpers.neighborAnalysis(graph, wordLengthLimit);
     } else {
-      if (parallelLazyBFS) {
-        LevenshteinParallel.LazyFindPathBFS.setupThreadPool();
-      }
+      loadAndBuild();
+    }
+    if (runPerfTests && graph != null) {
+      Helpers.compareBFSVisitedSets(graph, 2000);
+    }
+    if (parallelLazyBFS || parallelGraphBFS) {
+      LevenshteinParallel.LazyFindPathBFS.setupThreadPool();
     }
-    wordLengthStarts = buildWordLengthStarts(
-        wordLengthLimit); // For lazy neighbor finding in all cases.
 
     // These are some sample pairs used to test and time our search algorithms.
+    String[][] samplePairs = {{"dog", "cat"}, {"dog", "smart"}, {"dog", "quack"},
+        // These were originally chosen randomly from the set of words with neighbors.
+        // Turns our some are quite good test cases.
+        {"angerly", "invaded"}, {"vulgates", "gumwood"}, {"sweetly", "raddles"},
+        {"lenten", "chiffonnieres"}, {"cradlemen", "discreation"}, {"blinkingly", "taupou"},
+        {"protanopia", "interiorist"}, {"outchid", "paramountly"}, {"bldr", "rewrote"},
+        {"evacuee", "fall"}, {"monkey", "business"}};
+
     if (runSamplePairs) {
       long searchStartTime = System.nanoTime();
 
-      findPathBFS("dog", "cat");
-      findPathBFS("dog", "smart");
-      findPathBFS("dog", "quack");
-
-      // These were originally chosen randomly from the set of words with neighbors.
-      // Turns our some are quite good test cases.
-      findPathBFS("angerly", "invaded");
-      findPathBFS("vulgates", "gumwood");
-      findPathBFS("sweetly", "raddles");
-      findPathBFS("lenten", "chiffonnieres");
-      findPathBFS("cradlemen", "discreation");
-      findPathBFS("blinkingly", "taupou");
-      findPathBFS("protanopia", "interiorist");
-      findPathBFS("outchid", "paramountly");
-      findPathBFS("bldr", "rewrote");
-      findPathBFS("evacuee", "fall");
-      findPathBFS("monkey", "business");
+      for (String[] pair : samplePairs) {
+        findPathBFS(pair[0], pair[1]);
+      }
 
       double searchMS = (System.nanoTime() - searchStartTime) / 1000000.0;
       System.out.format("Total search time: %,.2fms\n\n", searchMS);
 
       if (!buildFullMap) {
-        Helpers.neighborAnalysis(neighbors, wordLengthLimit);
+        Helpers.neighborAnalysis(neighborCache.snapshot(), wordLengthLimit);
+        System.out.println(neighborCache);
+        System.out.println(lazyComponents + "\n");
       }
     }
 
+    // A* with landmarks vs. BFS, over the graph.
+    if (runLandmarkTests && graph != null) {
+      new LandmarkIndex(graph, landmarkCount, 42).compareWithBFS(samplePairs, 1000, 42);
+    }
+
+    // All the words within a few edits of some misspelled words.
+    if (runFuzzyLookupTests) {
+      new BKTree(words).runBenchmark(200, 42);
+    }
+
+    // Lots of pairs from a file, all at once.
+    if (runBatch) {
+      BatchQueries.run(batchInputFilename, batchOutputFilename, batchWritePaths);
+    }
+
     if (letTheUserPlay) {
       Scanner scanner = new Scanner(System.in);
       while (true) {
@@ -662,7 +1403,7 @@ public class Levenshtein {
       scanner.close();
     }
 
-    if (parallelLazyBFS) {
+    if (parallelLazyBFS || parallelGraphBFS) {
       LevenshteinParallel.LazyFindPathBFS.cleanupThreadPool();
     }
 
@@ -2,10 +2,12 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.stream.IntStream;
 
 // An implementation of the AP CS Levenshtein distance project, inspired by Tristen Yim's idea,
 // from March 2023, of searching from both sides simultaneously.
@@ -36,6 +38,10 @@ public class LevenshteinBothSides {
   // On each side we have an explored area, and a frontier of neighbors of that explored area. We grow each
   // frontier alternatively, and stop when frontiers intersect. Then we join up paths from both sides.
   private static FindResult findPaths(String w1, String w2) {
+    if (useIdSearch || graph != null) {
+      return findPathsById(wordId(w1), wordId(w2));
+    }
+
     var leftFrontier = new WordsToParents();
     leftFrontier.put(w1, new ArrayList<String>());
     var leftExplored = new WordsToParents();
@@ -105,25 +111,30 @@ public class LevenshteinBothSides {
     for (var w : intersection) {
       var pathsLeft = buildPathsForSide(leftFrontier.get(w), true, leftExplored);
       var pathsRight = buildPathsForSide(rightFrontier.get(w), false, rightExplored);
+      joinPaths(paths, w, pathsLeft, pathsRight);
+    }
 
-      if (pathsLeft.isEmpty()) {
+    return paths;
+  }
+
+  // Join the paths from each side at the given word in the middle.
+  private static void joinPaths(ArrayList<String> paths, String w, List<String> pathsLeft,
+      List<String> pathsRight) {
+    if (pathsLeft.isEmpty()) {
+      for (var pr : pathsRight) {
+        paths.add(w + " -> " + pr);
+      }
+    } else if (pathsRight.isEmpty()) {
+      for (var pl : pathsLeft) {
+        paths.add(pl + " -> " + w);
+      }
+    } else {
+      for (var pl : pathsLeft) {
         for (var pr : pathsRight) {
-          paths.add(w + " -> " + pr);
-        }
-      } else if (pathsRight.isEmpty()) {
-        for (var pl : pathsLeft) {
-          paths.add(pl + " -> " + w);
-        }
-      } else {
-        for (var pl : pathsLeft) {
-          for (var pr : pathsRight) {
-            paths.add(pl + " -> " + w + " -> " + pr);
-          }
+          paths.add(pl + " -> " + w + " -> " + pr);
         }
       }
     }
-
-    return paths;
   }
 
   // Recursively build a list of paths for one side, given a list of starting words in the explored area.
@@ -149,6 +160,236 @@ public class LevenshteinBothSides {
     return paths;
   }
 
+  // --------------------------------------------------------------------------------------------------
+  // Finding and building paths over word ids
+
+  // Exactly the same search as findPaths(), but over word ids, which are just positions in the
+  // sorted list of words. Everything the string version keeps in hash maps is kept in primitive
+  // arrays here:
+  //
+  // - Each side's explored area is a bitset with one bit per word in the dictionary.
+  //
+  // - Each frontier is a sorted array of ids, so finding where the two sides meet is just a merge of
+  //   two sorted arrays, no copying into a set.
+  //
+  // - Every word on a frontier was found from one or more words on the previous frontier. Those
+  //   parents are kept per level, like a little NeighborGraph: parentStarts[i] to parentStarts[i + 1]
+  //   is the range of parents[] for ids[i].
+  //
+  // And since the explored area doesn't change while we expand a frontier, we can expand a frontier
+  // in parallel chunks with no locks at all. Each chunk returns (word, parent) pairs packed into
+  // longs, and sorting them gives us the next level directly.
+  record Level(int[] ids, int[] parentStarts, int[] parents) {
+
+    int indexOf(int id) {
+      return Arrays.binarySearch(ids, id);
+    }
+  }
+
+  private static final class Side {
+
+    private final long[] explored;
+    private final ArrayList<Level> levels = new ArrayList<>();
+
+    Side(int start, int wordCount) {
+      explored = new long[(wordCount + 63) >>> 6];
+      levels.add(new Level(new int[]{start}, new int[]{0, 0}, new int[0]));
+    }
+
+    Level frontier() {
+      return levels.get(levels.size() - 1);
+    }
+  }
+
+  // Frontiers are split into a few chunks per thread, so a thread which gets slow words doesn't
+  // hold everyone else up. Even small frontiers are split: monkey -> business never has more than
+  // ~250 words in one, but each of them costs a whole neighbor scan without an index or a graph.
+  private static final int frontierThreadCount = Runtime.getRuntime().availableProcessors();
+  private static final int frontierChunksPerThread = 4;
+
+  private static FindResult findPathsById(int w1, int w2) {
+    if (w1 < 0 || w2 < 0) {
+      return new FindResult(0, new ArrayList<String>());
+    }
+
+    var left = new Side(w1, words.size());
+    var right = new Side(w2, words.size());
+    int length = 0;
+
+    while (left.frontier().ids.length > 0 && right.frontier().ids.length > 0) {
+      Level lf = left.frontier();
+      Level rf = right.frontier();
+      System.out.format("Left frontier: %d, right frontier: %d\n", lf.ids.length, rf.ids.length);
+
+      // Have we found words on one side which match words on the other side? Both are sorted.
+      var paths = new ArrayList<String>();
+      boolean intersects = false;
+      int i = 0;
+      int j = 0;
+      while (i < lf.ids.length && j < rf.ids.length) {
+        if (lf.ids[i] < rf.ids[j]) {
+          i++;
+        } else if (lf.ids[i] > rf.ids[j]) {
+          j++;
+        } else {
+          intersects = true;
+          int w = lf.ids[i];
+          var pathsLeft = buildParentPathsById(left, left.levels.size() - 1, i, true);
+          var pathsRight = buildParentPathsById(right, right.levels.size() - 1, j, false);
+          joinPaths(paths, words.get(w), pathsLeft, pathsRight);
+          i++;
+          j++;
+        }
+      }
+      if (intersects) {
+        // We've found some words in the middle, so we're done!
+        return new FindResult(length, paths);
+      }
+
+      // Advance the smaller frontier, favoring the starting word (left side).
+      if (lf.ids.length <= rf.ids.length) {
+        advanceFrontierById(left);
+      } else {
+        advanceFrontierById(right);
+      }
+
+      length++;
+    }
+
+    return new FindResult(0, new ArrayList<String>());
+  }
+
+  private static void advanceFrontierById(Side side) {
+    // Merge the current frontier into the explored area.
+    Level f = side.frontier();
+    long[] explored = side.explored;
+    for (int id : f.ids) {
+      explored[id >>> 6] |= 1L << id;
+    }
+
+    // Find the (neighbor, parent) pairs for each chunk of the frontier in parallel. With only one
+    // thread, handing chunks to the pool just costs us context switches, so don't.
+    int chunkSize = Math.max(1, f.ids.length / (frontierThreadCount * frontierChunksPerThread));
+    int chunkCount = (f.ids.length + chunkSize - 1) / chunkSize;
+    IntStream chunks = IntStream.range(0, chunkCount);
+    if (frontierThreadCount > 1 && chunkCount > 1) {
+      chunks = chunks.parallel();
+    }
+    long[][] found = chunks.mapToObj(c -> {
+      long[] pairs = new long[64];
+      int n = 0;
+      int end = Math.min(f.ids.length, (c + 1) * chunkSize);
+      for (int i = c * chunkSize; i < end; i++) {
+        int parent = f.ids[i];
+        for (int id : neighborIds(parent)) {
+          if ((explored[id >>> 6] & (1L << id)) != 0) {
+            continue;
+          }
+          if (n == pairs.length) {
+            pairs = Arrays.copyOf(pairs, n * 2);
+          }
+          pairs[n++] = ((long) id << 32) | parent;
+        }
+      }
+      return Arrays.copyOf(pairs, n);
+    }).toArray(long[][]::new);
+
+    int total = 0;
+    for (long[] pairs : found) {
+      total += pairs.length;
+    }
+    long[] all = new long[total];
+    int p = 0;
+    for (long[] pairs : found) {
+      System.arraycopy(pairs, 0, all, p, pairs.length);
+      p += pairs.length;
+    }
+    Arrays.parallelSort(all);
+
+    // Sorted by word then parent, so each new word's parents are together.
+    int[] ids = new int[all.length];
+    int[] parentStarts = new int[all.length + 1];
+    int[] parents = new int[all.length];
+    int count = 0;
+    for (int k = 0; k < all.length; k++) {
+      int id = (int) (all[k] >>> 32);
+      if (count == 0 || ids[count - 1] != id) {
+        ids[count] = id;
+        parentStarts[count] = k;
+        count++;
+      }
+      parents[k] = (int) all[k];
+    }
+    parentStarts[count] = all.length;
+    side.levels.add(new Level(Arrays.copyOf(ids, count), Arrays.copyOf(parentStarts, count + 1),
+        parents));
+  }
+
+  // The neighbors of a word, as ids.
+  private static int[] neighborIds(int id) {
+    if (graph != null) {
+      return Arrays.copyOfRange(graph.edges, graph.offsets[id], graph.offsets[id + 1]);
+    }
+
+    var w = words.get(id);
+    if (deletionIndex != null) {
+      return deletionIndex.findNeighborIds(w);
+    }
+
+    var end = words.size();
+    if (w.length() + 2 < wordLengthStarts.length) {
+      end = wordLengthStarts[w.length() + 2];
+    }
+    int[] ids = new int[16];
+    int n = 0;
+    for (int j = wordLengthStarts[w.length() - 1]; j < end; j++) {
+      if (editDistance(w, words.get(j)) == 1) {
+        if (n == ids.length) {
+          ids = Arrays.copyOf(ids, n * 2);
+        }
+        ids[n++] = j;
+      }
+    }
+    return Arrays.copyOf(ids, n);
+  }
+
+  // All paths to the parents of the word at index i of the given level, or an empty list at the
+  // start word.
+  private static ArrayList<String> buildParentPathsById(Side side, int level, int i,
+      boolean left) {
+    var paths = new ArrayList<String>();
+    Level l = side.levels.get(level);
+    for (int k = l.parentStarts[i]; k < l.parentStarts[i + 1]; k++) {
+      paths.addAll(buildPathsForSideById(side, level - 1, l.parents[k], left));
+    }
+    return paths;
+  }
+
+  // Recursively build all paths from the word with the given id, on the given level, back to the
+  // start of its side.
+  private static ArrayList<String> buildPathsForSideById(Side side, int level, int id,
+      boolean left) {
+    var s = words.get(id);
+    var paths = new ArrayList<String>();
+    if (level == 0) {
+      paths.add(s);
+      return paths;
+    }
+
+    Level l = side.levels.get(level);
+    int i = l.indexOf(id);
+    for (int k = l.parentStarts[i]; k < l.parentStarts[i + 1]; k++) {
+      for (var p : buildPathsForSideById(side, level - 1, l.parents[k], left)) {
+        if (left) {
+          paths.add(p + " -> " + s);
+        } else {
+          paths.add(s + " -> " + p);
+        }
+      }
+    }
+    return paths;
+  }
+
   // --------------------------------------------------------------------------------------------------
   // Running pairs of words and showing results
 
@@ -181,18 +422,59 @@ public class LevenshteinBothSides {
   public static List<String> words = null;
   public static int[] wordLengthStarts = null;
 
+  // Find neighbors with a few lookups in a deletion index, rather than scanning all the words of
+  // similar lengths. See DeletionIndex.java.
+  private static final boolean useDeletionIndex = false;
+  private static DeletionIndex deletionIndex = null;
+
+  // Find all the neighbors up front and keep them in a NeighborGraph, then search over word ids.
+  // Best with the deletion index, which makes building the graph take just a few seconds.
+  private static final boolean useGraph = false;
+  private static NeighborGraph graph = null;
+
+  // Search over word ids, with or without a graph. See findPathsById().
+  private static final boolean useIdSearch = true;
+
+  private static int wordId(String w) {
+    int id = Collections.binarySearch(words, w, NeighborGraph.wordOrder);
+    return id >= 0 ? id : -1;
+  }
+
   public static void main(String[] args) throws IOException {
     // Load our dictionary of English words. Dictionary from https://github.com/dwyl/english-words
     final String dictionaryFilename = "./words_alpha.txt";
     words = Files.readAllLines(Paths.get(dictionaryFilename));
     System.out.format("Loaded %d words from %s\n\n", words.size(), dictionaryFilename);
 
-    // Sort the dictionary by word length
-    words.sort(Comparator.comparingInt(String::length));
+    // Sort the dictionary by word length, then alphabetically so a word's position makes a good id.
+    words.sort(NeighborGraph.wordOrder);
 
     // Find where each word length starts in our dictionary. Now we can quickly find, say, words of length 4.
     wordLengthStarts = buildWordLengthStarts(32);
 
+    if (useDeletionIndex) {
+      deletionIndex = new DeletionIndex(words);
+      System.out.format("Built deletion index in %,.2fms, %,d entries, %,d bytes\n\n",
+          deletionIndex.getBuildNanos() / 1_000_000.0, deletionIndex.getEntryCount(),
+          deletionIndex.getSizeInBytes());
+    }
+
+    if (useGraph) {
+      long startTime = System.nanoTime();
+      var edges = new NeighborGraph.EdgeList();
+      for (int id = 0; id < words.size(); id++) {
+        var w = words.get(id);
+        for (var n : findNeighbors(w)) {
+          if (NeighborGraph.wordOrder.compare(w, n) < 0) {
+            edges.add(id, Collections.binarySearch(words, n, NeighborGraph.wordOrder));
+          }
+        }
+      }
+      graph = NeighborGraph.fromEdges(words, edges);
+      System.out.format("Built neighbor graph in %,.2fms, %,d edges, %,d bytes\n\n",
+          (System.nanoTime() - startTime) / 1_000_000.0, graph.edgeCount(), graph.sizeInBytes());
+    }
+
     boolean correct = true;
     correct &= doPair("dog", "dog", 0, 0);
     correct &= doPair("dog", "dot", 1, 1);
@@ -320,6 +602,11 @@ public class LevenshteinBothSides {
   // NB: no caching here! Just laziness, but you'll see from the run times it's not needed.
   private static ArrayList<String> findNeighbors(String w) {
     var neighbors = new ArrayList<String>();
+    if (deletionIndex != null) {
+      deletionIndex.findNeighbors(w, neighbors);
+      return neighbors;
+    }
+
     var end = words.size();
     if (w.length() + 2 < wordLengthStarts.length) {
       end = wordLengthStarts[w.length() + 2];
@@ -10,12 +10,17 @@ import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class LevenshteinParallel {
 
   // Options
   private static final int parallelBuildChunkSize = 5000;
+  private static final int forkJoinTasksPerThread = 64; // See buildFullGraphForkJoin()
   private static final int parallelThreadCount = Runtime.getRuntime().availableProcessors();
+  private static final BuildMode graphBuildMode = BuildMode.ForkJoin;
+  static final boolean runBuildScalingTests = false;
 
   private static final int lazyBFSBuildMapChunkSize = 500;
   private static final int lazyBFSBuildLevelChunkSize = 5000;
@@ -30,6 +35,8 @@ public class LevenshteinParallel {
   // similar it can be to the original. In particular the shared HashMap is an
   // obvious point of contention, but honestly the ratio of neighbors to the total
   // search space is low enough that it doesn't make that much of a difference.
+  // When building a NeighborGraph there are also lock free and work stealing
+  // versions, see BuildMode and runBuildScalingTests().
   //
   // The major concepts to explore here are: Runnable (used to make "tasks" to do
   // the work), CountDownLatch (used to know when all the work is done),
@@ -48,25 +55,40 @@ public class LevenshteinParallel {
     private final int endIndex;
     private final CountDownLatch doneLatch;
 
-    public NeighborMapTask(int startIndex, int endIndex, CountDownLatch doneLatch) {
+    // Where edges go when we're building a graph, or null when we're building the map. Either the
+    // shared Levenshtein.graphEdges, which needs a lock, or this task's own list, which doesn't.
+    private final NeighborGraph.EdgeList edges;
+    private final boolean sharedEdges;
+
+    public NeighborMapTask(int startIndex, int endIndex, CountDownLatch doneLatch,
+        NeighborGraph.EdgeList edges, boolean sharedEdges) {
       this.startIndex = startIndex;
       this.endIndex = endIndex;
       this.doneLatch = doneLatch;
+      this.edges = edges;
+      this.sharedEdges = sharedEdges;
     }
 
     // There are just 4 small changes to the code vs. the serial version, each
     // marked with a comment. Put them side-by-side and compare.
     @Override
     public void run() {
-      ArrayList<String> words = Levenshtein.words;
+      if (Levenshtein.findNeighborsPerWord) {
+        runPerWord();
+        return;
+      }
+
+      List<String> words = Levenshtein.words;
       HashMap<String, List<String>> neighbors = Levenshtein.neighbors;
       int wordsLen = words.size();
       for (int i = startIndex; i < endIndex; i++) { // Limited range
         String w1 = words.get(i);
         int w1l = w1.length();
-        List<String> nl;
-        synchronized (neighbors) { // Protect the map
-          nl = neighbors.get(w1);
+        List<String> nl = null;
+        if (edges == null) {
+          synchronized (neighbors) { // Protect the map
+            nl = neighbors.get(w1);
+          }
         }
         for (int j = i + 1; j < wordsLen; j++) {
           String w2 = words.get(j);
@@ -84,6 +106,10 @@ public class LevenshteinParallel {
             }
           }
           if (ed == 1) {
+            if (edges != null) {
+              addEdge(i, j);
+              continue;
+            }
             synchronized (neighbors) { // Protect the map **and its contents**.
               if (nl == null) {
                 nl = neighbors.get(w1); // Retry... it might have been added by another thread.
@@ -109,24 +135,93 @@ public class LevenshteinParallel {
               startIndex,
               endIndex, doneLatch.getCount());
     }
+
+    private void addEdge(int i, int j) {
+      if (sharedEdges) {
+        synchronized (edges) { // Protect the edge list
+          edges.add(i, j);
+        }
+      } else {
+        edges.add(i, j); // All ours, no lock needed
+      }
+    }
+
+    // When generating and probing, using the deletion index, or looking more than one edit away,
+    // each word finds all of its own neighbors, so the only shared state is the map itself. The
+    // dictionary set and index are read-only.
+    private void runPerWord() {
+      List<String> words = Levenshtein.words;
+      HashMap<String, List<String>> neighbors = Levenshtein.neighbors;
+      for (int i = startIndex; i < endIndex; i++) { // Limited range
+        String w = words.get(i);
+        List<String> nl = new ArrayList<>();
+        Levenshtein.findNeighbors(w, nl);
+        if (edges != null && sharedEdges) {
+          synchronized (edges) { // Protect the edge list
+            Levenshtein.addGraphEdges(i, nl, edges);
+          }
+        } else if (edges != null) {
+          Levenshtein.addGraphEdges(i, nl, edges);
+        } else if (!nl.isEmpty()) {
+          synchronized (neighbors) { // Protect the map
+            neighbors.put(w, nl);
+          }
+        }
+      }
+      doneLatch.countDown(); // Let buildFullNeighborMapParallel() know this task is done.
+    }
+  }
+
+  // The ways the parallel build can store what it finds.
+  enum BuildMode {
+    SynchronizedMap, // Into Levenshtein.neighbors, under a lock
+    SynchronizedEdges, // Into Levenshtein.graphEdges, under a lock
+    LockFree, // Into each task's own edge list, merged into a graph at the end
+    ForkJoin // Into each worker's own edge list, with work stealing. See buildFullGraphForkJoin().
+  }
+
+  // Build the full neighbor map, or graph, in parallel with the default thread count. When building
+  // a graph, graphBuildMode picks how, and the lock free modes build Levenshtein.graph themselves.
+  public static void buildFullNeighborMapParallel() {
+    if (Levenshtein.graphEdges == null) {
+      buildFullNeighborMapParallel(parallelThreadCount, BuildMode.SynchronizedMap);
+    } else {
+      Levenshtein.graph = buildFullNeighborMapParallel(parallelThreadCount, graphBuildMode);
+    }
   }
 
   // This partitions the list of words into equal sized chunks, one per task, and
   // enqueues all of the tasks to a thread pool. It then waits for all the threads
   // to finish.
-  public static void buildFullNeighborMapParallel() {
+  //
+  // In LockFree mode nothing is shared while we compare words. Each task fills its own EdgeList, and
+  // once they're all done NeighborGraph.fromEdgeLists() merges them into the graph in parallel.
+  // Returns the graph in the lock free modes, null otherwise.
+  static NeighborGraph buildFullNeighborMapParallel(int threadCount, BuildMode mode) {
+    if (mode == BuildMode.ForkJoin) {
+      return buildFullGraphForkJoin(threadCount);
+    }
     long startTime = System.nanoTime();
 
-    ExecutorService pool = Executors.newFixedThreadPool(parallelThreadCount);
+    ExecutorService pool = Executors.newFixedThreadPool(threadCount);
 
     int taskCount = Levenshtein.words.size() / parallelBuildChunkSize + 1;
     CountDownLatch doneLatch = new CountDownLatch(taskCount);
     System.out
         .printf("Spawning up %,d tasks to build the map in parallel...\n", doneLatch.getCount());
+    ArrayList<NeighborGraph.EdgeList> taskEdges = new ArrayList<>();
     int size = 0;
     for (int i = 0; i < Levenshtein.words.size(); i += parallelBuildChunkSize) {
       size = Math.min(parallelBuildChunkSize, Levenshtein.words.size() - i);
-      pool.execute(new NeighborMapTask(i, i + size, doneLatch));
+      if (mode == BuildMode.LockFree) {
+        NeighborGraph.EdgeList edges = new NeighborGraph.EdgeList();
+        taskEdges.add(edges);
+        pool.execute(new NeighborMapTask(i, i + size, doneLatch, edges, false));
+      } else if (mode == BuildMode.SynchronizedEdges) {
+        pool.execute(new NeighborMapTask(i, i + size, doneLatch, Levenshtein.graphEdges, true));
+      } else {
+        pool.execute(new NeighborMapTask(i, i + size, doneLatch, null, false));
+      }
     }
 
     System.out.printf("Waiting for %,d tasks to build the map...\n", taskCount);
@@ -137,10 +232,268 @@ public class LevenshteinParallel {
       System.out.println(e); // Pretty poor error handling ;)
     }
 
+    NeighborGraph g = null;
+    if (mode == BuildMode.LockFree) {
+      long mergeStartTime = System.nanoTime();
+      g = NeighborGraph.fromEdgeLists(Levenshtein.words, taskEdges);
+      System.out.printf("Merged %,d task edge lists in %,.02fms\n", taskEdges.size(),
+          (System.nanoTime() - mergeStartTime) / 1000000.0);
+    }
+
+    double elapsedMS = (System.nanoTime() - startTime) / 1000000.0;
+    System.out.printf(
+        "Done building neighbor map in parallel, elapsed time: %,.02fms, chunk size %,d, thread count %d, %s\n\n",
+        elapsedMS, parallelBuildChunkSize, threadCount, mode);
+    return g;
+  }
+
+  // Build the graph with fork/join and work stealing.
+  //
+  // Chunks of 5,000 words are far from equal amounts of work. With the Scan finder, word i is
+  // compared to every word after it of the same length, and every word one longer, so the first
+  // word of a length does far more work than the last, and lengths 7-10 do far more than the rest.
+  // Even with other finders longer words take longer. With fixed chunks some threads get all the
+  // expensive ones and the rest sit idle at the end.
+  //
+  // So first we estimate the cost of each word, and keep a running total. A task takes a range of
+  // words, and if its estimated cost is too big it splits the range at the halfway point of its
+  // cost, not its words, and forks both halves. That gives tasks of roughly equal cost everywhere.
+  // Estimates are never perfect, so the ForkJoinPool lets idle workers steal waiting tasks from
+  // busy ones, and everybody finishes at about the same time.
+  //
+  // Each worker collects edges in its own EdgeList, so there are no locks while we compare words,
+  // and the lists are merged into the graph just like the lock free build.
+  static NeighborGraph buildFullGraphForkJoin(int threadCount) {
+    long startTime = System.nanoTime();
+    List<String> words = Levenshtein.words;
+    int n = words.size();
+
+    long[] costPrefix = new long[n + 1];
+    int lengthEnd = 0; // Index after the last word of the current length
+    int nextLengthEnd = 0; // Index after the last word one longer than that
+    for (int i = 0; i < n; i++) {
+      int l = words.get(i).length();
+      long cost;
+      if (Levenshtein.neighborDistance > 1) {
+        cost = Levenshtein.neighborFinder == Levenshtein.NeighborFinder.DeletionIndex
+            ? DeletionIndex.keyCount(l, Levenshtein.neighborDistance) // Lookups per word
+            : scanWindow(l, Levenshtein.neighborDistance); // Words each word compares against
+      } else if (Levenshtein.neighborFinder == Levenshtein.NeighborFinder.Scan) {
+        if (i >= lengthEnd) {
+          lengthEnd = i;
+          while (lengthEnd < n && words.get(lengthEnd).length() == l) {
+            lengthEnd++;
+          }
+          nextLengthEnd = lengthEnd;
+          while (nextLengthEnd < n && words.get(nextLengthEnd).length() == l + 1) {
+            nextLengthEnd++;
+          }
+        }
+        cost = nextLengthEnd - i; // Rest of this length, plus all of the next.
+      } else {
+        cost = l + 1; // One lookup, or set of lookups, per deletion.
+      }
+      costPrefix[i + 1] = costPrefix[i] + cost;
+    }
+    long leafCost = Math.max(1, costPrefix[n] / ((long) threadCount * forkJoinTasksPerThread));
+
+    ForkJoinBuildState state = new ForkJoinBuildState(costPrefix, leafCost);
+    ForkJoinPool pool = new ForkJoinPool(threadCount);
+    long compareStartTime = System.nanoTime();
+    pool.invoke(new ForkJoinBuildTask(state, 0, n));
+    long compareNanos = System.nanoTime() - compareStartTime;
+    long steals = pool.getStealCount();
+    pool.shutdown();
+
+    ArrayList<NeighborGraph.EdgeList> workerEdges = new ArrayList<>();
+    System.out.printf("%-32s %8s %10s %12s %12s %8s\n", "Worker", "Tasks", "Words", "Busy ms",
+        "Idle ms", "Busy");
+    for (ForkJoinWorker w : state.workers) {
+      workerEdges.add(w.edges);
+      System.out.printf("%-32s %,8d %,10d %,12.2f %,12.2f %7.1f%%\n", w.name, w.tasks, w.words,
+          w.busyNanos / 1000000.0, (compareNanos - w.busyNanos) / 1000000.0,
+          w.busyNanos * 100.0 / compareNanos);
+    }
+    System.out.printf("%,d workers, %,d steals, estimated cost %,d, leaf cost %,d\n",
+        state.workers.size(), steals, costPrefix[n], leafCost);
+
+    long mergeStartTime = System.nanoTime();
+    NeighborGraph g = NeighborGraph.fromEdgeLists(words, workerEdges);
+    System.out.printf("Merged %,d worker edge lists in %,.02fms\n", workerEdges.size(),
+        (System.nanoTime() - mergeStartTime) / 1000000.0);
+
     double elapsedMS = (System.nanoTime() - startTime) / 1000000.0;
     System.out.printf(
-        "Done building neighbor map in parallel, elapsed time: %,.02fms, chunk size %,d, thread count %d\n\n",
-        elapsedMS, parallelBuildChunkSize, parallelThreadCount);
+        "Done building neighbor map in parallel, elapsed time: %,.02fms, thread count %d, %s\n\n",
+        elapsedMS, threadCount, BuildMode.ForkJoin);
+    return g;
+  }
+
+  // What each worker thread has done: its edges, and how long it spent doing real work.
+  private static final class ForkJoinWorker {
+
+    private final String name = Thread.currentThread().getName();
+    private final NeighborGraph.EdgeList edges = new NeighborGraph.EdgeList();
+    private long busyNanos = 0;
+    private int tasks = 0;
+    private int words = 0;
+  }
+
+  // Shared, read-only state for one build, plus the list of workers. Each worker adds itself to the
+  // list once, the first time it runs a task, so that's the only lock.
+  private static final class ForkJoinBuildState {
+
+    private final long[] costPrefix;
+    private final long leafCost;
+    private final ArrayList<ForkJoinWorker> workers = new ArrayList<>();
+    private final ThreadLocal<ForkJoinWorker> worker = ThreadLocal.withInitial(() -> {
+      ForkJoinWorker w = new ForkJoinWorker();
+      synchronized (this.workers) {
+        this.workers.add(w);
+      }
+      return w;
+    });
+
+    ForkJoinBuildState(long[] costPrefix, long leafCost) {
+      this.costPrefix = costPrefix;
+      this.leafCost = leafCost;
+    }
+  }
+
+  private static final class ForkJoinBuildTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ForkJoinBuildState state;
+    private final int startIndex;
+    private final int endIndex;
+
+    ForkJoinBuildTask(ForkJoinBuildState state, int startIndex, int endIndex) {
+      this.state = state;
+      this.startIndex = startIndex;
+      this.endIndex = endIndex;
+    }
+
+    @Override
+    protected void compute() {
+      long[] cp = state.costPrefix;
+      if (cp[endIndex] - cp[startIndex] > state.leafCost && endIndex - startIndex > 1) {
+        // Split where half of the cost is on each side.
+        long half = (cp[startIndex] + cp[endIndex]) / 2;
+        int lo = startIndex + 1;
+        int hi = endIndex - 1;
+        while (lo < hi) {
+          int mid = (lo + hi) >>> 1;
+          if (cp[mid] < half) {
+            lo = mid + 1;
+          } else {
+            hi = mid;
+          }
+        }
+        invokeAll(new ForkJoinBuildTask(state, startIndex, lo),
+            new ForkJoinBuildTask(state, lo, endIndex));
+        return;
+      }
+
+      ForkJoinWorker w = state.worker.get();
+      long s = System.nanoTime();
+      for (int i = startIndex; i < endIndex; i++) {
+        findEdges(i, w.edges);
+      }
+      w.busyNanos += System.nanoTime() - s;
+      w.tasks++;
+      w.words += endIndex - startIndex;
+    }
+  }
+
+  // How many words a word of length l is compared against when scanning for neighbors up to k edits
+  // away: every word of length l-k thru l+k.
+  private static long scanWindow(int l, int k) {
+    int[] starts = Levenshtein.wordLengthStarts;
+    int end = l + k + 1 < starts.length ? starts[l + k + 1] : Levenshtein.words.size();
+    return Math.max(1, end - starts[Math.max(0, l - k)]);
+  }
+
+  // Add all edges from word i to neighbors with larger ids.
+  private static void findEdges(int i, NeighborGraph.EdgeList edges) {
+    List<String> words = Levenshtein.words;
+    String w1 = words.get(i);
+    if (Levenshtein.findNeighborsPerWord) {
+      List<String> nl = new ArrayList<>();
+      Levenshtein.findNeighbors(w1, nl);
+      Levenshtein.addGraphEdges(i, nl, edges);
+      return;
+    }
+    if (Levenshtein.packedWords != null) {
+      Levenshtein.packedWords.findEdges(i, edges);
+      return;
+    }
+
+    int w1l = w1.length();
+    int wordsLen = words.size();
+    for (int j = i + 1; j < wordsLen; j++) {
+      String w2 = words.get(j);
+      int w2l = w2.length();
+      int ed;
+      if (w1l == w2l) {
+        ed = Levenshtein.editDistanceEqual(w1, w2);
+      } else if (w2l - w1l == 1) {
+        ed = Levenshtein.editDistanceOffByOne(w1, w2);
+      } else {
+        break; // Everything past j is too long.
+      }
+      if (ed == 1) {
+        edges.add(i, j);
+      }
+    }
+  }
+
+  // Time each build mode from 1 thread up to all of them. The synchronized edge list build includes
+  // turning the edges into a graph, so it's directly comparable to the lock free builds. The
+  // synchronized map build is the original version, for reference. Speedup is for fork/join.
+  //
+  // This leaves Levenshtein.neighbors, graphEdges, and graph empty when it's done.
+  public static void runBuildScalingTests() {
+    ArrayList<Integer> threadCounts = new ArrayList<>();
+    for (int t = 1; t < parallelThreadCount; t *= 2) {
+      threadCounts.add(t);
+    }
+    threadCounts.add(parallelThreadCount);
+
+    ArrayList<double[]> results = new ArrayList<>();
+    for (int t : threadCounts) {
+      double[] r = new double[BuildMode.values().length];
+      for (BuildMode mode : BuildMode.values()) {
+        Levenshtein.neighbors = new HashMap<>();
+        Levenshtein.graphEdges = new NeighborGraph.EdgeList();
+        long startTime = System.nanoTime();
+        NeighborGraph g = buildFullNeighborMapParallel(t, mode);
+        if (mode == BuildMode.SynchronizedEdges) {
+          g = NeighborGraph.fromEdges(Levenshtein.words, Levenshtein.graphEdges);
+        }
+        r[mode.ordinal()] = (System.nanoTime() - startTime) / 1000000.0;
+        if (g != null) {
+          System.out.printf("%s: %,d edges\n\n", mode, g.edgeCount());
+        }
+      }
+      results.add(r);
+    }
+    Levenshtein.neighbors = new HashMap<>();
+    Levenshtein.graphEdges = null;
+
+    System.out.printf("Parallel build scaling, %s neighbor finder, all times in ms:\n",
+        Levenshtein.neighborFinder);
+    System.out.printf("%8s %18s %18s %18s %18s %10s\n", "Threads", "Synchronized map",
+        "Synchronized edges", "Lock free", "Fork/join", "Speedup");
+    double base = results.get(0)[BuildMode.ForkJoin.ordinal()];
+    for (int i = 0; i < threadCounts.size(); i++) {
+      double[] r = results.get(i);
+      System.out.printf("%8d %,18.2f %,18.2f %,18.2f %,18.2f %9.2fx\n", threadCounts.get(i),
+          r[BuildMode.SynchronizedMap.ordinal()], r[BuildMode.SynchronizedEdges.ordinal()],
+          r[BuildMode.LockFree.ordinal()], r[BuildMode.ForkJoin.ordinal()],
+          base / r[BuildMode.ForkJoin.ordinal()]);
+    }
+    System.out.println();
   }
 
   // A parallel version of finding all paths between two words while building the
@@ -187,6 +540,12 @@ public class LevenshteinParallel {
     private ArrayList<Levenshtein.Node> neighborsOnEdgeOfExploredArea;
     private final HashSet<String> exploredArea;
 
+    // When searching a full NeighborGraph there's nothing to prepare, and the explored area is
+    // tracked by word id instead, in the calling thread's reusable OrdinalBFS.
+    private final NeighborGraph graph;
+    private final int targetId;
+    private final OrdinalBFS exploredIds;
+
     public LazyFindPathBFS(String startWord, String targetWord) {
       this.startWord = startWord;
       this.targetWord = targetWord;
@@ -194,6 +553,9 @@ public class LevenshteinParallel {
       this.totalMinPaths = 0;
       this.edgeOfExploredArea = new ArrayList<>();
       this.neighborsOnEdgeOfExploredArea = new ArrayList<>();
+      this.graph = Levenshtein.graph;
+      this.targetId = graph != null ? graph.getId(targetWord) : -1;
+      this.exploredIds = graph != null ? Levenshtein.getOrdinalBFS() : null;
     }
 
     public static void setupThreadPool() {
@@ -207,45 +569,28 @@ public class LevenshteinParallel {
     public void findPath() {
       System.out.format("Find path from '%s' to '%s'\n", startWord, targetWord);
       long startTime = System.nanoTime();
-      HashMap<String, List<String>> neighbors = Levenshtein.neighbors;
       int totalWords = 0;
-      edgeOfExploredArea.add(new Levenshtein.Node(null, startWord));
+      if (graph == null) {
+        edgeOfExploredArea.add(new Levenshtein.Node(null, startWord));
+      } else {
+        exploredIds.begin();
+        int startId = graph.getId(startWord);
+        if (startId >= 0) {
+          edgeOfExploredArea.add(new Levenshtein.Node(null, startWord, startId));
+        }
+      }
 
+      int level = 0;
       while (!edgeOfExploredArea.isEmpty() && totalMinPaths == 0) {
-        // Add the edge into the explored area set.
-        HashSet<String> uniqueWordsOnEdge = new HashSet<>();
-        for (Levenshtein.Node edgeNode : edgeOfExploredArea) {
-          uniqueWordsOnEdge.add(edgeNode.word);
-        }
-        exploredArea.addAll(uniqueWordsOnEdge);
         totalWords += edgeOfExploredArea.size();
-
-        // Prepare the new edge by lazily building any missing pieces of the neighbor
-        // map in parallel.
-        uniqueWordsOnEdge
-            .removeIf((w) -> neighbors.get(w) != null); // Filter out words with neighbors already.
-        if (uniqueWordsOnEdge.size() == 0) {
-          System.out.println("Prepare edge:    no work");
-        } else {
-          // Farm out chunks of work to tasks. Note that we do this even if there's only a
-          // small bit of work to do. A common optimization is to just do that work
-          // directly rather than start a single task for it. I haven't done that here
-          // because it just makes the code more complex for minimal benefit.
-          String[] uniqueWords = uniqueWordsOnEdge.stream().toArray(String[]::new);
-          int taskCount = uniqueWords.length / lazyBFSBuildMapChunkSize + 1;
-          CountDownLatch doneLatch = new CountDownLatch(taskCount);
-          System.out
-              .printf("Prepare edge: %, 4d tasks for %, 9d words\n", taskCount, uniqueWords.length);
-          int size = 0;
-          for (int i = 0; i < uniqueWords.length; i += lazyBFSBuildMapChunkSize) {
-            size = Math.min(lazyBFSBuildMapChunkSize, uniqueWords.length - i);
-            lazyBFSPool.execute(new LazyBuildMapTask(uniqueWords, i, i + size, doneLatch));
-          }
-          try {
-            doneLatch.await();
-          } catch (Exception e) {
-            System.out.println(e); // Pretty poor error handling ;)
+        if (graph != null) {
+          // Add the edge into the explored area. The full graph needs no preparation.
+          for (Levenshtein.Node edgeNode : edgeOfExploredArea) {
+            exploredIds.visit(edgeNode.id, level);
           }
+          level++;
+        } else {
+          prepareEdge();
         }
 
         // Expand the edge by pulling in all neighbors of the current edge, checking for
@@ -281,6 +626,43 @@ public class LevenshteinParallel {
               totalWords, totalMinPaths);
     }
 
+    // Add the edge into the explored area set, and prepare the new edge by lazily building any
+    // missing pieces of the neighbor map in parallel.
+    private void prepareEdge() {
+      NeighborCache cache = Levenshtein.neighborCache;
+      HashSet<String> uniqueWordsOnEdge = new HashSet<>();
+      for (Levenshtein.Node edgeNode : edgeOfExploredArea) {
+        uniqueWordsOnEdge.add(edgeNode.word);
+      }
+      exploredArea.addAll(uniqueWordsOnEdge);
+
+      uniqueWordsOnEdge
+          .removeIf(cache::contains); // Filter out words with neighbors already.
+      if (uniqueWordsOnEdge.size() == 0) {
+        System.out.println("Prepare edge:    no work");
+      } else {
+        // Farm out chunks of work to tasks. Note that we do this even if there's only a
+        // small bit of work to do. A common optimization is to just do that work
+        // directly rather than start a single task for it. I haven't done that here
+        // because it just makes the code more complex for minimal benefit.
+        String[] uniqueWords = uniqueWordsOnEdge.stream().toArray(String[]::new);
+        int taskCount = uniqueWords.length / lazyBFSBuildMapChunkSize + 1;
+        CountDownLatch doneLatch = new CountDownLatch(taskCount);
+        System.out
+            .printf("Prepare edge: %, 4d tasks for %, 9d words\n", taskCount, uniqueWords.length);
+        int size = 0;
+        for (int i = 0; i < uniqueWords.length; i += lazyBFSBuildMapChunkSize) {
+          size = Math.min(lazyBFSBuildMapChunkSize, uniqueWords.length - i);
+          lazyBFSPool.execute(new LazyBuildMapTask(uniqueWords, i, i + size, doneLatch));
+        }
+        try {
+          doneLatch.await();
+        } catch (Exception e) {
+          System.out.println(e); // Pretty poor error handling ;)
+        }
+      }
+    }
+
     // A task to build up the neighbor map for a chunk of words. This part ought to
     // look pretty similar to the regular version.
     private final class LazyBuildMapTask implements Runnable {
@@ -301,20 +683,8 @@ public class LevenshteinParallel {
       @Override
       public void run() {
         for (int i = startIndex; i < endIndex; i++) { // Limited range
-          String w = uniqueWords[i];
-          List<String> nl;
-          boolean needToBuild = false;
-          synchronized (Levenshtein.neighbors) { // Protect the map
-            nl = Levenshtein.neighbors.get(w);
-            if (nl == null) {
-              nl = new ArrayList<>();
-              Levenshtein.neighbors.put(w, nl);
-              needToBuild = true;
-            }
-          }
-          if (needToBuild) {
-            Levenshtein.lazyBuildNeighborMap(w, nl); // This thread is the only one working on w.
-          }
+          // The cache makes sure only one thread ever works on w.
+          Levenshtein.neighborCache.get(uniqueWords[i]);
         }
 
         doneLatch.countDown(); // Let findPathBFSLazyParallel() know this task is done.
@@ -339,9 +709,15 @@ public class LevenshteinParallel {
 
       @Override
       public void run() {
+        if (data.graph != null) {
+          runOverGraph();
+          return;
+        }
+
         for (int i = startIndex; i < endIndex; i++) { // Limited range
           Levenshtein.Node n = data.edgeOfExploredArea.get(i);
-          List<String> nl = Levenshtein.neighbors.get(n.word); // Read-only
+          // Already prepared, unless the cache had to evict it since.
+          List<String> nl = Levenshtein.neighborCache.get(n.word);
           for (String w : nl) {
             if (w.equals(data.targetWord)) {
               List<String> p = Levenshtein.buildPath(n);
@@ -369,6 +745,41 @@ public class LevenshteinParallel {
 
         doneLatch.countDown(); // Let findPathBFSLazyParallel() know this task is done.
       }
+
+      // The same expansion over word ids. New nodes are collected locally and added to the next
+      // edge with a single lock per task.
+      private void runOverGraph() {
+        NeighborGraph g = data.graph;
+        ArrayList<Levenshtein.Node> next = new ArrayList<>();
+        for (int i = startIndex; i < endIndex; i++) { // Limited range
+          Levenshtein.Node n = data.edgeOfExploredArea.get(i);
+          for (int e = g.offsets[n.id]; e < g.offsets[n.id + 1]; e++) {
+            int id = g.edges[e];
+            if (id == data.targetId) {
+              List<String> p = Levenshtein.buildPath(n);
+              synchronized (data) {
+                if (data.totalMinPaths == 0) {
+                  System.out.println("Shortest path lengths: " + p.size());
+                  // Copy-paste to http://www.webgraphviz.com/
+                  System.out.format("digraph %s_%s_%d{concentrate=true;\n", data.startWord,
+                      data.targetWord, p.size());
+                }
+                data.totalMinPaths++;
+                // Print under the lock, so the output isn't interleaved.
+                Levenshtein.printPath(p, data.targetWord);
+              }
+            }
+            if (!data.exploredIds.isVisited(id)) { // Read only
+              next.add(new Levenshtein.Node(n, g.word(id), id));
+            }
+          }
+        }
+        synchronized (data.neighborsOnEdgeOfExploredArea) {
+          data.neighborsOnEdgeOfExploredArea.addAll(next);
+        }
+
+        doneLatch.countDown(); // Let findPathBFSLazyParallel() know this task is done.
+      }
     }
   }
 }
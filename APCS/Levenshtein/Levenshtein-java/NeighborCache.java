@@ -0,0 +1,175 @@
+// Copyright (c) Michael M. Magruder (https://github.com/mikemag)
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+// A thread-safe, bounded cache of neighbor lists for the lazy searches.
+//
+// The lazy searches used to keep every neighbor list they ever found in a plain HashMap, so a long
+// session would slowly build the whole map anyway, and the parallel search had to lock the map for
+// every lookup. This fixes both:
+//
+// - Compute once: the first thread to ask for a word puts a placeholder in the map and finds the
+//   neighbors. Any other thread asking for the same word in the meantime waits for that answer
+//   rather than finding it again.
+//
+// - Bounded: each entry is charged an estimate of its size, and when we're over budget we evict
+//   with the "clock", or second chance, algorithm. Entries sit in a queue in the order they were
+//   added. Every hit marks an entry as referenced. To evict, we look at the oldest entry. If it's
+//   been referenced since we last looked, we clear the mark and move it to the back, otherwise
+//   it goes. So words which keep getting used stay, and one-off words from old searches leave
+//   first. Hits never take a lock, only adding and evicting do.
+//
+// Evicting a word just means we'll find its neighbors again if we need them.
+public class NeighborCache {
+
+  // A rough size for an entry: the map node, our entry, the future, and the list. References to
+  // the words themselves are charged at 8 bytes each, since the words are shared with the
+  // dictionary.
+  private static final long entryOverheadBytes = 128;
+  private static final long bytesPerNeighbor = 8;
+
+  private static final class Entry {
+
+    private final String word;
+    private final CompletableFuture<List<String>> neighbors = new CompletableFuture<>();
+    private volatile boolean referenced = false;
+    private long bytes = 0;
+
+    Entry(String word) {
+      this.word = word;
+    }
+  }
+
+  private final long budgetBytes;
+  private final BiConsumer<String, List<String>> finder;
+  private final ConcurrentHashMap<String, Entry> map = new ConcurrentHashMap<>();
+
+  // Guarded by clock
+  private final ArrayDeque<Entry> clock = new ArrayDeque<>();
+  private long usedBytes = 0;
+  private long evictions = 0;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder waits = new LongAdder();
+
+  public NeighborCache(long budgetBytes, BiConsumer<String, List<String>> finder) {
+    this.budgetBytes = budgetBytes;
+    this.finder = finder;
+  }
+
+  // Get the neighbors of w, finding them if we don't have them yet. The returned list must not be
+  // modified.
+  public List<String> get(String w) {
+    Entry e = map.get(w);
+    if (e == null) {
+      Entry ne = new Entry(w);
+      e = map.putIfAbsent(w, ne);
+      if (e == null) {
+        misses.increment();
+        return computeAndAdmit(ne);
+      }
+    }
+
+    hits.increment();
+    e.referenced = true;
+    if (!e.neighbors.isDone()) {
+      waits.increment(); // Another thread is finding these right now.
+    }
+    return e.neighbors.join();
+  }
+
+  public boolean contains(String w) {
+    return map.containsKey(w);
+  }
+
+  private List<String> computeAndAdmit(Entry e) {
+    List<String> nl = new ArrayList<>();
+    try {
+      finder.accept(e.word, nl);
+    } catch (RuntimeException ex) {
+      map.remove(e.word, e);
+      e.neighbors.completeExceptionally(ex);
+      throw ex;
+    }
+    e.neighbors.complete(nl);
+    e.bytes = entryOverheadBytes + bytesPerNeighbor * nl.size();
+
+    synchronized (clock) {
+      clock.addLast(e);
+      usedBytes += e.bytes;
+      // Always keep the newest entry, even if it alone is over budget.
+      while (usedBytes > budgetBytes && clock.size() > 1) {
+        Entry v = clock.pollFirst();
+        if (v.referenced) {
+          v.referenced = false;
+          clock.addLast(v);
+        } else {
+          map.remove(v.word, v);
+          usedBytes -= v.bytes;
+          evictions++;
+        }
+      }
+    }
+    return nl;
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  public long getWaits() {
+    return waits.sum();
+  }
+
+  public long getEvictions() {
+    synchronized (clock) {
+      return evictions;
+    }
+  }
+
+  public long getUsedBytes() {
+    synchronized (clock) {
+      return usedBytes;
+    }
+  }
+
+  public int size() {
+    return map.size();
+  }
+
+  // A copy of everything currently in the cache, e.g., for Helpers.neighborAnalysis().
+  public HashMap<String, List<String>> snapshot() {
+    HashMap<String, List<String>> m = new HashMap<>();
+    for (Map.Entry<String, Entry> e : map.entrySet()) {
+      if (e.getValue().neighbors.isDone()) {
+        m.put(e.getKey(), e.getValue().neighbors.join());
+      }
+    }
+    return m;
+  }
+
+  public String toString() {
+    long h = getHits();
+    long lookups = h + getMisses();
+    return String.format("Neighbor cache: %,d entries, %,d of %,d bytes, %,d hits, %,d misses, "
+            + "%.2f%% hit rate, %,d waits, %,d evictions", size(), getUsedBytes(), budgetBytes, h,
+        getMisses(), lookups == 0 ? 0.0 : (double) h / lookups * 100.0, getWaits(),
+        getEvictions());
+  }
+}
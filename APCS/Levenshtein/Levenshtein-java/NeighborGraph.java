@@ -0,0 +1,195 @@
+// Copyright (c) Michael M. Magruder (https://github.com/mikemag)
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+// A compact, read-only form of the full neighbor map.
+//
+// A HashMap<String, List<String>> with ~230k keys and ~920k list entries is a lot of objects: map
+// entries, ArrayLists, arrays of references, and it makes a BFS chase pointers all over the heap.
+// Instead, we can give every word an id, its position in the sorted list of words, and store the
+// graph in "compressed sparse row" form:
+//
+//   - edges holds every word's neighbor ids, one word after another.
+//   - offsets[id] is where word id's neighbors start in edges, and offsets[id + 1] is where they
+//     end.
+//
+// That's two int arrays, ~5.5MB for the whole dictionary, and walking a word's neighbors is a
+// simple loop over a contiguous range of ints.
+public class NeighborGraph {
+
+  // Words are sorted by length, then alphabetically, so we can find a word's id with a binary
+  // search. Sorting by length is what all of the builders want anyway.
+  public static final Comparator<String> wordOrder =
+      Comparator.comparingInt(String::length).thenComparing(Comparator.naturalOrder());
+
+  public final List<String> words;
+  public final int[] offsets;
+  public final int[] edges;
+  private ComponentIndex components = null; // Made on first use
+
+  public NeighborGraph(List<String> words, int[] offsets, int[] edges) {
+    this.words = words;
+    this.offsets = offsets;
+    this.edges = edges;
+  }
+
+  public int size() {
+    return offsets.length - 1;
+  }
+
+  public int edgeCount() {
+    return edges.length;
+  }
+
+  public int degree(int id) {
+    return offsets[id + 1] - offsets[id];
+  }
+
+  public String word(int id) {
+    return words.get(id);
+  }
+
+  // Graphs loaded by NeighborGraphFile keep their words in a mapped file, and graphs built from a
+  // WordArena keep them in the arena, and both can tell us a word's length without building a
+  // String for it.
+  public int wordLength(int id) {
+    if (words instanceof NeighborGraphFile.MappedWordList) {
+      return ((NeighborGraphFile.MappedWordList) words).length(id);
+    }
+    if (words instanceof WordArena) {
+      return ((WordArena) words).length(id);
+    }
+    return words.get(id).length();
+  }
+
+  public synchronized ComponentIndex getComponents() {
+    if (components == null) {
+      components = new ComponentIndex(this);
+    }
+    return components;
+  }
+
+  // The id of the given word, or -1 if it isn't in the dictionary.
+  public int getId(String w) {
+    int i = Collections.binarySearch(words, w, wordOrder);
+    return i >= 0 ? i : -1;
+  }
+
+  public List<String> getNeighborWords(int id) {
+    ArrayList<String> l = new ArrayList<>(degree(id));
+    for (int e = offsets[id]; e < offsets[id + 1]; e++) {
+      l.add(words.get(edges[e]));
+    }
+    return l;
+  }
+
+  public long sizeInBytes() {
+    return ((long) offsets.length + edges.length) * Integer.BYTES;
+  }
+
+  // A growable list of undirected edges, kept as two parallel int arrays. The builders add each
+  // pair of neighbors once, and fromEdges() adds both directions.
+  public static final class EdgeList {
+
+    private int[] a = new int[1024];
+    private int[] b = new int[1024];
+    private int size = 0;
+
+    public void add(int i, int j) {
+      if (size == a.length) {
+        a = Arrays.copyOf(a, size * 2);
+        b = Arrays.copyOf(b, size * 2);
+      }
+      a[size] = i;
+      b[size] = j;
+      size++;
+    }
+
+    public int size() {
+      return size;
+    }
+  }
+
+  // Build the graph from a list of undirected edges with a counting sort: count each word's
+  // neighbors, turn the counts into offsets, then drop each edge into place. Each word's neighbors
+  // are then sorted, so the result doesn't depend on the order the edges were found in.
+  public static NeighborGraph fromEdges(List<String> words, EdgeList edgeList) {
+    int n = words.size();
+    int[] offsets = new int[n + 1];
+    for (int e = 0; e < edgeList.size; e++) {
+      offsets[edgeList.a[e] + 1]++;
+      offsets[edgeList.b[e] + 1]++;
+    }
+    for (int i = 0; i < n; i++) {
+      offsets[i + 1] += offsets[i];
+    }
+
+    int[] edges = new int[offsets[n]];
+    int[] next = Arrays.copyOf(offsets, n);
+    for (int e = 0; e < edgeList.size; e++) {
+      int i = edgeList.a[e];
+      int j = edgeList.b[e];
+      edges[next[i]++] = j;
+      edges[next[j]++] = i;
+    }
+    for (int i = 0; i < n; i++) {
+      Arrays.sort(edges, offsets[i], offsets[i + 1]);
+    }
+
+    return new NeighborGraph(words, offsets, edges);
+  }
+
+  // Build the graph from many edge lists, e.g., one per task, all in parallel.
+  //
+  // Each undirected edge becomes two directed edges packed into a long, from id in the high half and
+  // to id in the low half. Sorting those puts every word's neighbors together, in order, which is
+  // exactly CSR order. So the edges are just the low halves, and a word's offset is where its id
+  // first shows up in the high halves. The sort and both of those steps run in parallel.
+  public static NeighborGraph fromEdgeLists(List<String> words, List<EdgeList> edgeLists) {
+    int n = words.size();
+    int[] starts = new int[edgeLists.size() + 1];
+    for (int l = 0; l < edgeLists.size(); l++) {
+      starts[l + 1] = starts[l] + edgeLists.get(l).size * 2;
+    }
+
+    long[] packed = new long[starts[edgeLists.size()]];
+    IntStream.range(0, edgeLists.size()).parallel().forEach(l -> {
+      EdgeList el = edgeLists.get(l);
+      int p = starts[l];
+      for (int e = 0; e < el.size; e++) {
+        packed[p++] = ((long) el.a[e] << 32) | el.b[e];
+        packed[p++] = ((long) el.b[e] << 32) | el.a[e];
+      }
+    });
+    Arrays.parallelSort(packed);
+
+    int[] edges = new int[packed.length];
+    Arrays.parallelSetAll(edges, e -> (int) packed[e]);
+    int[] offsets = new int[n + 1];
+    Arrays.parallelSetAll(offsets, id -> lowerBound(packed, (long) id << 32));
+
+    return new NeighborGraph(words, offsets, edges);
+  }
+
+  private static int lowerBound(long[] a, long key) {
+    int lo = 0;
+    int hi = a.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (a[mid] < key) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+}
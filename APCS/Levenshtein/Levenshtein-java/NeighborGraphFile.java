@@ -0,0 +1,205 @@
+// Copyright (c) Michael M. Magruder (https://github.com/mikemag)
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.zip.CRC32;
+
+// Save a finished NeighborGraph to disk, and memory-map it back in on later runs.
+//
+// Even the fastest full build takes seconds, and the serial one takes minutes, and the answer is
+// the same every time for the same dictionary. So we write the graph out once, and after that
+// startup is just mapping a file. The layout is all fixed-size little-endian ints, then the words:
+//
+//   header:      magic, version, wordLengthLimit, word count, edge count, arena length,
+//                dictionary length and CRC32 (longs)
+//   wordOffsets: word count + 1 ints, where each word starts in the arena
+//   offsets:     word count + 1 ints, the graph's CSR offsets
+//   edges:       edge count ints, the graph's CSR edges
+//   arena:       every word's bytes, one after another, no separators
+//
+// The dictionary's length and CRC32 are checked on load, along with the word length limit, and if
+// anything doesn't match the file is stale and we return null so the caller rebuilds it.
+//
+// The CSR arrays are copied out of the mapping into int[]s, which takes a few ms and keeps the BFS
+// code the same for built and loaded graphs. The words stay in the mapping and are only turned into
+// Strings when someone asks for one, so we never build 370k Strings just to start up.
+public class NeighborGraphFile {
+
+  private static final long magic = 0x4850524756454C4CL; // "LLEVGRPH", little-endian
+  private static final int version = 1;
+  private static final int headerBytes = 48;
+
+  // CRC32 of the whole dictionary file. It's only ~4MB, so this is quick.
+  public static long dictionaryChecksum(String dictionaryFilename) throws IOException {
+    CRC32 crc = new CRC32();
+    try (InputStream in = Files.newInputStream(Paths.get(dictionaryFilename))) {
+      byte[] buf = new byte[1 << 16];
+      int n;
+      while ((n = in.read(buf)) > 0) {
+        crc.update(buf, 0, n);
+      }
+    }
+    return crc.getValue();
+  }
+
+  public static void save(NeighborGraph g, String filename, String dictionaryFilename,
+      int wordLengthLimit) {
+    long startTime = System.nanoTime();
+    try {
+      int n = g.size();
+      int[] wordOffsets = new int[n + 1];
+      for (int id = 0; id < n; id++) {
+        wordOffsets[id + 1] = wordOffsets[id] + g.word(id).length();
+      }
+      int arenaLength = wordOffsets[n];
+
+      long size = headerBytes + (2L * (n + 1) + g.edgeCount()) * Integer.BYTES + arenaLength;
+      ByteBuffer b = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+      b.putLong(magic);
+      b.putInt(version);
+      b.putInt(wordLengthLimit);
+      b.putInt(n);
+      b.putInt(g.edgeCount());
+      b.putInt(arenaLength);
+      b.putInt(0); // Padding, keeps the longs and everything after them aligned.
+      b.putLong(Files.size(Paths.get(dictionaryFilename)));
+      b.putLong(dictionaryChecksum(dictionaryFilename));
+
+      IntBuffer ib = b.asIntBuffer();
+      ib.put(wordOffsets);
+      ib.put(g.offsets);
+      ib.put(g.edges);
+      b.position(b.position() + ib.position() * Integer.BYTES);
+      for (int id = 0; id < n; id++) {
+        b.put(g.word(id).getBytes(StandardCharsets.ISO_8859_1));
+      }
+      b.flip();
+
+      // Write to a temp file and move it into place, so a crash never leaves a half-written graph
+      // that looks valid.
+      Path path = Paths.get(filename);
+      Path tmp = Paths.get(filename + ".tmp");
+      try (FileChannel fc = FileChannel.open(tmp, StandardOpenOption.CREATE,
+          StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+        while (b.hasRemaining()) {
+          fc.write(b);
+        }
+      }
+      Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+      System.out.format("Saved neighbor graph to %s in %,.2fms, %,d bytes\n\n", filename,
+          (System.nanoTime() - startTime) / 1_000_000.0, size);
+    } catch (IOException e) {
+      System.out.println("Failed to save the neighbor graph: " + e);
+    }
+  }
+
+  // Returns the graph from the file, or null if there's no file or it's out of date.
+  public static NeighborGraph load(String filename, String dictionaryFilename,
+      int wordLengthLimit) {
+    Path path = Paths.get(filename);
+    if (!Files.exists(path)) {
+      System.out.format("No saved neighbor graph at %s, building it...\n\n", filename);
+      return null;
+    }
+
+    long startTime = System.nanoTime();
+    try (FileChannel fc = FileChannel.open(path, StandardOpenOption.READ)) {
+      // The mapping stays valid after the channel is closed.
+      MappedByteBuffer b = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+      b.order(ByteOrder.LITTLE_ENDIAN);
+
+      if (fc.size() < headerBytes || b.getLong() != magic || b.getInt() != version) {
+        System.out.format("%s isn't a neighbor graph we understand, rebuilding it...\n\n",
+            filename);
+        return null;
+      }
+      int fileWordLengthLimit = b.getInt();
+      int n = b.getInt();
+      int edgeCount = b.getInt();
+      int arenaLength = b.getInt();
+      b.getInt();
+      long dictionaryLength = b.getLong();
+      long checksum = b.getLong();
+
+      if (fileWordLengthLimit != wordLengthLimit
+          || dictionaryLength != Files.size(Paths.get(dictionaryFilename))
+          || checksum != dictionaryChecksum(dictionaryFilename)) {
+        System.out.format("Saved neighbor graph %s is stale, rebuilding it...\n\n", filename);
+        return null;
+      }
+      long expectedSize = headerBytes + (2L * (n + 1) + edgeCount) * Integer.BYTES + arenaLength;
+      if (fc.size() != expectedSize) {
+        System.out.format("Saved neighbor graph %s is truncated, rebuilding it...\n\n", filename);
+        return null;
+      }
+
+      IntBuffer ib = b.asIntBuffer();
+      int[] wordOffsets = new int[n + 1];
+      int[] offsets = new int[n + 1];
+      int[] edges = new int[edgeCount];
+      ib.get(wordOffsets);
+      ib.get(offsets);
+      ib.get(edges);
+
+      int arenaStart = headerBytes + (2 * (n + 1) + edgeCount) * Integer.BYTES;
+      ByteBuffer arena = b.slice(arenaStart, arenaLength);
+
+      NeighborGraph g = new NeighborGraph(new MappedWordList(arena, wordOffsets), offsets, edges);
+      System.out.format("Loaded neighbor graph from %s in %,.2fms, %,d words, %,d edges\n\n",
+          filename, (System.nanoTime() - startTime) / 1_000_000.0, n, edgeCount);
+      return g;
+    } catch (IOException e) {
+      System.out.format("Failed to load the neighbor graph from %s, rebuilding it: %s\n\n",
+          filename, e);
+      return null;
+    }
+  }
+
+  // A read-only list of the words, straight out of the mapped arena. Words are ASCII, so each byte
+  // is a char.
+  static final class MappedWordList extends AbstractList<String> implements RandomAccess {
+
+    private final ByteBuffer arena;
+    private final int[] wordOffsets;
+
+    MappedWordList(ByteBuffer arena, int[] wordOffsets) {
+      this.arena = arena;
+      this.wordOffsets = wordOffsets;
+    }
+
+    @Override
+    public String get(int i) {
+      byte[] w = new byte[wordOffsets[i + 1] - wordOffsets[i]];
+      arena.get(wordOffsets[i], w);
+      return new String(w, StandardCharsets.ISO_8859_1);
+    }
+
+    // The length of a word without building it.
+    int length(int i) {
+      return wordOffsets[i + 1] - wordOffsets[i];
+    }
+
+    @Override
+    public int size() {
+      return wordOffsets.length - 1;
+    }
+  }
+}
@@ -0,0 +1,111 @@
+// Copyright (c) Michael M. Magruder (https://github.com/mikemag)
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+import java.util.Arrays;
+
+// The bookkeeping for a BFS over word ids (ordinals), made to be reused for query after query.
+//
+// The string searches keep a HashSet<String> of visited words, so every edge we look at hashes a
+// string, and every query allocates a new set that grows to hundreds of thousands of entries. Here
+// we have:
+//
+// - visited: one bit per word. 370k words is ~46KB, small enough to stay in cache, and testing a
+//   bit is about the cheapest thing we can do per edge.
+//
+// - distance: each visited word's distance from the start, with a matching epoch stamp. A distance
+//   is only valid if its stamp is the current epoch, so starting a new query is just bumping the
+//   epoch, never clearing the array.
+//
+// - order: every word visited, in the order we visited them. For search() this is the BFS queue
+//   itself. It also tells us exactly which bits to clear for the next query, so that's proportional
+//   to the words we explored, not the size of the dictionary.
+//
+// Nothing is allocated per query. One of these is not thread-safe, so use one per thread.
+public class OrdinalBFS {
+
+  private final NeighborGraph graph;
+  private final long[] visited;
+  private final int[] distance;
+  private final int[] stamp;
+  private final int[] order;
+  private int visitedCount = 0;
+  private int epoch = 0;
+
+  public OrdinalBFS(NeighborGraph graph) {
+    int n = graph.size();
+    this.graph = graph;
+    this.visited = new long[(n + 63) >>> 6];
+    this.distance = new int[n];
+    this.stamp = new int[n];
+    this.order = new int[n];
+  }
+
+  // Start a new query, forgetting everything from the last one.
+  public void begin() {
+    for (int i = 0; i < visitedCount; i++) {
+      visited[order[i] >>> 6] = 0; // Clears neighbors' bits too, which is fine, they're all going.
+    }
+    visitedCount = 0;
+    epoch++;
+    if (epoch == Integer.MAX_VALUE) { // Only after billions of queries
+      Arrays.fill(stamp, 0);
+      epoch = 1;
+    }
+  }
+
+  // Mark a word visited at the given distance. Returns false if it was already visited.
+  public boolean visit(int id, int d) {
+    long bit = 1L << id;
+    int w = id >>> 6;
+    if ((visited[w] & bit) != 0) {
+      return false;
+    }
+    visited[w] |= bit;
+    distance[id] = d;
+    stamp[id] = epoch;
+    order[visitedCount++] = id;
+    return true;
+  }
+
+  public boolean isVisited(int id) {
+    return (visited[id >>> 6] & (1L << id)) != 0;
+  }
+
+  // The distance from the start, or -1 if the word hasn't been visited in this query.
+  public int getDistance(int id) {
+    return stamp[id] == epoch ? distance[id] : -1;
+  }
+
+  public int getVisitedCount() {
+    return visitedCount;
+  }
+
+  // The length of the shortest path between two words, or -1 if there isn't one. Stops as soon as
+  // the target is found.
+  public int search(int from, int to) {
+    begin();
+    if (from < 0 || to < 0) {
+      return -1;
+    }
+    visit(from, 0);
+    if (from == to) {
+      return 0;
+    }
+
+    int[] offsets = graph.offsets;
+    int[] edges = graph.edges;
+    for (int head = 0; head < visitedCount; head++) {
+      int id = order[head];
+      int d = distance[id] + 1;
+      for (int e = offsets[id]; e < offsets[id + 1]; e++) {
+        int n = edges[e];
+        if (visit(n, d) && n == to) {
+          return d;
+        }
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,197 @@
+// Copyright (c) Michael M. Magruder (https://github.com/mikemag)
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+import java.util.List;
+
+// Every short word packed into a long, so the cheater functions become a few bit operations.
+//
+// The dictionary is all lowercase a-z, which is 26 letters, so each fits in 5 bits: a = 1 thru
+// z = 26, with 0 meaning "no letter". 12 letters fit in 60 bits, and that covers ~85% of the
+// dictionary. Letter i of a word goes in bits 5i thru 5i+4, which we call lane i.
+//
+// Equal lengths: XOR the two words. Lanes where the letters match are all zeros, so the words are
+// one substitution apart when exactly one lane is non-zero. To count non-zero lanes, OR each lane's
+// five bits down into its lowest bit, mask off everything else, and count the bits that are left
+// with Long.bitCount(), which is a single popcount instruction on most machines.
+//
+// Off by one: the longer word is the shorter one with a letter inserted somewhere. Everything
+// before the insertion matches, so the insertion is at the first lane where the words differ, and
+// the XOR's trailing zeros tell us which lane that is. Then the rest of the shorter word, from that
+// lane on, has to match the rest of the longer word, from one lane further on. Shifting both down
+// to line those suffixes up makes that a single compare. Unlike editDistanceOffByOne() there's no
+// loop at all.
+//
+// Words which don't fit, i.e., longer ones, or ones with letters other than a-z, are marked as -1
+// and compared as Strings with the cheater functions instead.
+//
+// The words must be sorted by length, just like Levenshtein.words. Lengths are kept here too, so
+// the scans below never have to touch a String for a short word.
+//
+// Given a LengthBucketMatrix, the scans hand the whole equal length part to it, 8 words at a time,
+// and only do the off by one parts here.
+public class PackedWords {
+
+  public static final int maxPackedLength = 12;
+  private static final long laneLowBits = 0x0084210842108421L; // Bit 0 of each of the 12 lanes
+
+  private final List<String> words;
+  private final long[] packed; // -1 for words which don't fit
+  private final byte[] lengths;
+  private final int[] lengthStarts; // First word of each length, and one past the end
+  private final LengthBucketMatrix substitutions; // For equal lengths, if we have one
+  private final long buildNanos;
+
+  public PackedWords(List<String> words) {
+    this(words, null);
+  }
+
+  public PackedWords(List<String> words, LengthBucketMatrix substitutions) {
+    long startTime = System.nanoTime();
+    this.words = words;
+    this.substitutions = substitutions;
+    int n = words.size();
+    packed = new long[n];
+    lengths = new byte[n];
+    int longest = 0;
+    for (int i = 0; i < n; i++) {
+      String w = words.get(i);
+      packed[i] = pack(w);
+      lengths[i] = (byte) w.length();
+      longest = Math.max(longest, w.length());
+    }
+
+    lengthStarts = new int[longest + 2];
+    for (int l = 0, i = 0; l < lengthStarts.length; l++) {
+      while (i < n && lengths[i] < l) {
+        i++;
+      }
+      lengthStarts[l] = i;
+    }
+    buildNanos = System.nanoTime() - startTime;
+  }
+
+  public long getBuildNanos() {
+    return buildNanos;
+  }
+
+  public int getPackedCount() {
+    int c = 0;
+    for (long p : packed) {
+      if (p >= 0) {
+        c++;
+      }
+    }
+    return c;
+  }
+
+  // The word in 5-bit lanes, or -1 if it doesn't fit.
+  public static long pack(String w) {
+    int l = w.length();
+    if (l > maxPackedLength) {
+      return -1;
+    }
+    long p = 0;
+    for (int i = 0; i < l; i++) {
+      char c = w.charAt(i);
+      if (c < 'a' || c > 'z') {
+        return -1;
+      }
+      p |= (long) (c - 'a' + 1) << (5 * i);
+    }
+    return p;
+  }
+
+  // Number of substitutions between two packed words of the same length, stopping at 2, just like
+  // editDistanceEqual().
+  public static int distanceEqual(long a, long b) {
+    long x = a ^ b;
+    long lanes = (x | (x >>> 1) | (x >>> 2) | (x >>> 3) | (x >>> 4)) & laneLowBits;
+    return Math.min(Long.bitCount(lanes), 2);
+  }
+
+  // 1 if the longer packed word is the shorter one with one letter inserted, otherwise 2. The longer
+  // word must be exactly one letter longer, so it always has a lane the shorter one doesn't, and the
+  // XOR is never zero.
+  public static int distanceOffByOne(long shorter, long longer) {
+    int shift = Long.numberOfTrailingZeros(shorter ^ longer) / 5 * 5;
+    return (shorter >>> shift) == (longer >>> (shift + 5)) ? 1 : 2;
+  }
+
+  // Add all edges from word i to neighbors with larger ids. Same as
+  // LevenshteinParallel.findEdges(), with packed compares wherever both words fit.
+  public void findEdges(int i, NeighborGraph.EdgeList edges) {
+    String w1 = null; // Only fetched if we need it
+    long a = packed[i];
+    int w1l = lengths[i];
+    int j = i + 1;
+    if (substitutions != null) {
+      w1 = words.get(i);
+      for (int id : substitutions.findSubstitutions(w1, j)) {
+        edges.add(i, id);
+      }
+      j = lengthStarts[Math.min(w1l + 1, lengthStarts.length - 1)];
+    }
+    int end = lengthStarts[Math.min(w1l + 2, lengthStarts.length - 1)];
+    for (; j < end; j++) {
+      long b = packed[j];
+      int ed;
+      if (a >= 0 && b >= 0) {
+        ed = lengths[j] == w1l ? distanceEqual(a, b) : distanceOffByOne(a, b);
+      } else {
+        if (w1 == null) {
+          w1 = words.get(i);
+        }
+        String w2 = words.get(j);
+        ed = lengths[j] == w1l ? Levenshtein.editDistanceEqual(w1, w2)
+            : Levenshtein.editDistanceOffByOne(w1, w2);
+      }
+      if (ed == 1) {
+        edges.add(i, j);
+      }
+    }
+  }
+
+  // Find the neighbors of any word, in the dictionary or not. Same as
+  // Levenshtein.lazyBuildNeighborMap(), with packed compares wherever both words fit.
+  public void findNeighbors(String w1, List<String> nl) {
+    int w1l = w1.length();
+    int last = lengthStarts.length - 1;
+    int start = lengthStarts[Math.min(Math.max(0, w1l - 1), last)];
+    int end = lengthStarts[Math.min(w1l + 2, last)];
+    if (substitutions == null) {
+      findNeighbors(w1, start, end, nl);
+      return;
+    }
+    int equalStart = lengthStarts[Math.min(w1l, last)];
+    int equalEnd = lengthStarts[Math.min(w1l + 1, last)];
+    findNeighbors(w1, start, equalStart, nl);
+    for (int id : substitutions.findSubstitutions(w1, 0)) {
+      nl.add(words.get(id));
+    }
+    findNeighbors(w1, equalEnd, end, nl);
+  }
+
+  // Neighbors of w1 among words [start, end).
+  void findNeighbors(String w1, int start, int end, List<String> nl) {
+    long a = pack(w1);
+    int w1l = w1.length();
+    for (int j = start; j < end; j++) {
+      long b = packed[j];
+      int d = lengths[j] - w1l;
+      int ed;
+      if (a >= 0 && b >= 0) {
+        ed = d == 0 ? distanceEqual(a, b) : d > 0 ? distanceOffByOne(a, b) : distanceOffByOne(b, a);
+      } else {
+        String w2 = words.get(j);
+        ed = d == 0 ? Levenshtein.editDistanceEqual(w1, w2)
+            : d > 0 ? Levenshtein.editDistanceOffByOne(w1, w2)
+                : Levenshtein.editDistanceOffByOne(w2, w1);
+      }
+      if (ed == 1) {
+        nl.add(words.get(j));
+      }
+    }
+  }
+}
@@ -0,0 +1,255 @@
+// Copyright (c) Michael M. Magruder (https://github.com/mikemag)
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+// All shortest paths between two words, without keeping all the paths.
+//
+// The classic BFS in findPathBFS() makes a Node for every path to every word, so the queue grows
+// with the number of paths, not the number of words. Some pairs of words have huge numbers of
+// shortest paths, and most of those Nodes are for the same few words over and over.
+//
+// Instead, we do a plain BFS over words, remembering only each word's level, i.e., its distance
+// from the start. Every shortest path steps from level 0 to 1 to 2, etc., so a word's predecessors
+// on shortest paths are just its neighbors one level closer to the start. Working back from the
+// target that way gives us a small directed acyclic graph holding every word on any shortest path,
+// and nothing else.
+//
+// From the DAG we can count paths without listing them: the number of paths to a word is the sum
+// of the number of paths to each of its predecessors, and there's exactly one path to the start.
+// And we can list them one at a time, on request, with a depth-first walk back from the target.
+//
+// Memory is proportional to the words we explored, plus the words on shortest paths, no matter how
+// many paths there are.
+public class ShortestPathDAG {
+
+  private final int length;
+  private final int exploredWords;
+  private final String[] words; // Node 0 is the target, the start is the last node.
+  private final int[] predStarts; // Node i's predecessors are preds[predStarts[i]..predStarts[i+1])
+  private final int[] preds;
+  private final long pathCount;
+
+  private ShortestPathDAG(int length, int exploredWords, String[] words, int[] predStarts,
+      int[] preds) {
+    this.length = length;
+    this.exploredWords = exploredWords;
+    this.words = words;
+    this.predStarts = predStarts;
+    this.preds = preds;
+    this.pathCount = countPaths();
+  }
+
+  // Shortest path length, in edits, or -1 if there's no path.
+  public int getLength() {
+    return length;
+  }
+
+  // The number of words the search found on its way to the target.
+  public int getExploredWords() {
+    return exploredWords;
+  }
+
+  // The number of words on any shortest path, including both ends.
+  public int getDAGWords() {
+    return words.length;
+  }
+
+  public long getPathCount() {
+    return pathCount;
+  }
+
+  // Nodes are numbered so that predecessors always come after the nodes that lead to them, so
+  // working from the last node to the first gives the dynamic programming order.
+  private long countPaths() {
+    if (words.length == 0) {
+      return 0;
+    }
+    long[] counts = new long[words.length];
+    for (int i = words.length - 1; i >= 0; i--) {
+      if (predStarts[i] == predStarts[i + 1]) {
+        counts[i] = 1; // The start word
+      } else {
+        for (int p = predStarts[i]; p < predStarts[i + 1]; p++) {
+          counts[i] += counts[preds[p]];
+        }
+      }
+    }
+    return counts[0];
+  }
+
+  // Every shortest path, start word first, built one at a time as you iterate.
+  public Iterator<List<String>> paths() {
+    return new Iterator<>() {
+      // The walk from the target back towards the start: node[d] is at distance d from the target,
+      // and next[d] is which of its predecessors we're on.
+      private final int[] node = new int[length + 1];
+      private final int[] next = new int[length + 1];
+      private boolean hasNext = words.length > 0;
+
+      {
+        if (hasNext) {
+          for (int d = 1; d <= length; d++) {
+            node[d] = preds[predStarts[node[d - 1]]]; // First path: always take the first pred.
+            next[d - 1] = 1;
+          }
+        }
+      }
+
+      @Override
+      public boolean hasNext() {
+        return hasNext;
+      }
+
+      @Override
+      public List<String> next() {
+        if (!hasNext) {
+          throw new NoSuchElementException();
+        }
+        ArrayList<String> p = new ArrayList<>(length + 1);
+        for (int d = length; d >= 0; d--) {
+          p.add(words[node[d]]);
+        }
+        advance();
+        return p;
+      }
+
+      // Move to the next path: back up to the deepest node with another predecessor to try, take
+      // it, then take the first predecessor the rest of the way down.
+      private void advance() {
+        int d = length - 1;
+        while (d >= 0 && predStarts[node[d]] + next[d] >= predStarts[node[d] + 1]) {
+          d--;
+        }
+        if (d < 0) {
+          hasNext = false;
+          return;
+        }
+        node[d + 1] = preds[predStarts[node[d]] + next[d]];
+        next[d]++;
+        for (int e = d + 1; e < length; e++) {
+          node[e + 1] = preds[predStarts[node[e]]];
+          next[e] = 1;
+        }
+      }
+    };
+  }
+
+  // Search from w1 to w2 over words, getting neighbors from the given function. When prefetch is
+  // set, each level's neighbors are found in parallel first, which needs a thread-safe function.
+  // Components, if given, answer for pairs we already know aren't connected, and learn from every
+  // search which doesn't find its target.
+  public static ShortestPathDAG search(String w1, String w2,
+      Function<String, List<String>> neighbors, boolean prefetch,
+      ComponentIndex.Lazy components) {
+    if (components != null && components.knownDisconnected(w1, w2)) {
+      return new ShortestPathDAG(-1, 0, new String[0], new int[1], new int[0]);
+    }
+    HashMap<String, Integer> levels = new HashMap<>();
+    levels.put(w1, 0);
+    ArrayList<String> frontier = new ArrayList<>();
+    frontier.add(w1);
+    int length = w1.equals(w2) ? 0 : -1;
+
+    for (int level = 0; !frontier.isEmpty() && length < 0; level++) {
+      if (prefetch) {
+        frontier.parallelStream().forEach(neighbors::apply);
+      }
+      ArrayList<String> next = new ArrayList<>();
+      for (String w : frontier) {
+        for (String n : neighbors.apply(w)) {
+          if (n.equals(w2)) {
+            length = level + 1;
+          }
+          if (levels.putIfAbsent(n, level + 1) == null) {
+            next.add(n);
+          }
+        }
+      }
+      frontier = next;
+    }
+
+    if (length < 0) {
+      if (components != null) {
+        components.addComponent(w1, levels.keySet()); // We've seen all of w1's component.
+      }
+      return new ShortestPathDAG(-1, levels.size(), new String[0], new int[1], new int[0]);
+    }
+    return fromLevels(w2, length, levels.size(), w -> levels.getOrDefault(w, -1), neighbors, w -> w);
+  }
+
+  // Search from id w1 to id w2 over a NeighborGraph, with the given OrdinalBFS. Words in different
+  // components are turned away without searching at all.
+  public static ShortestPathDAG search(NeighborGraph g, OrdinalBFS bfs, int w1, int w2) {
+    if (w1 >= 0 && w2 >= 0 && !g.getComponents().connected(w1, w2)) {
+      return new ShortestPathDAG(-1, 0, new String[0], new int[1], new int[0]);
+    }
+    int length = bfs.search(w1, w2);
+    if (length < 0) {
+      return new ShortestPathDAG(-1, bfs.getVisitedCount(), new String[0], new int[1], new int[0]);
+    }
+    return fromLevels(w2, length, bfs.getVisitedCount(), bfs::getDistance, id -> {
+      ArrayList<Integer> l = new ArrayList<>(g.degree(id));
+      for (int e = g.offsets[id]; e < g.offsets[id + 1]; e++) {
+        l.add(g.edges[e]);
+      }
+      return l;
+    }, g::word);
+  }
+
+  // Work back from the target, a level at a time, collecting every word on a shortest path and its
+  // predecessors. The keys can be words or ids, whatever the search used.
+  private static <K> ShortestPathDAG fromLevels(K target, int length, int explored,
+      ToIntFunction<K> level, Function<K, List<K>> neighbors, Function<K, String> word) {
+    ArrayList<K> nodes = new ArrayList<>();
+    HashMap<K, Integer> nodeIds = new HashMap<>();
+    nodes.add(target);
+    nodeIds.put(target, 0);
+    int[] predStarts = new int[16];
+    int[] preds = new int[16];
+    int predCount = 0;
+
+    for (int i = 0; i < nodes.size(); i++) {
+      if (i + 1 >= predStarts.length) {
+        predStarts = Arrays.copyOf(predStarts, predStarts.length * 2);
+      }
+      predStarts[i] = predCount;
+      K v = nodes.get(i);
+      int l = i == 0 ? length : level.applyAsInt(v);
+      if (l == 0) {
+        continue;
+      }
+      for (K u : neighbors.apply(v)) {
+        if (level.applyAsInt(u) == l - 1) {
+          Integer id = nodeIds.get(u);
+          if (id == null) {
+            id = nodes.size();
+            nodes.add(u);
+            nodeIds.put(u, id);
+          }
+          if (predCount == preds.length) {
+            preds = Arrays.copyOf(preds, predCount * 2);
+          }
+          preds[predCount++] = id;
+        }
+      }
+    }
+    predStarts[nodes.size()] = predCount;
+
+    String[] words = new String[nodes.size()];
+    for (int i = 0; i < words.length; i++) {
+      words[i] = word.apply(nodes.get(i));
+    }
+    return new ShortestPathDAG(length, explored, words,
+        Arrays.copyOf(predStarts, nodes.size() + 1), Arrays.copyOf(preds, predCount));
+  }
+}
@@ -0,0 +1,236 @@
+// Copyright (c) Michael M. Magruder (https://github.com/mikemag)
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+import java.util.stream.IntStream;
+
+// The dictionary, loaded straight from a memory-mapped file into one byte[], already sorted.
+//
+// Helpers.loadDictionary() reads the file a line at a time with a Scanner, makes a String for each
+// of the ~370k words, and then we sort them all with a Comparator. Each String is an object header,
+// a hash, and a separate byte[] with its own header, so a 5 letter word takes ~50 bytes, and the
+// sort does millions of comparisons through a lambda.
+//
+// Instead, we map the file and work on its bytes directly:
+//
+// 1. Split the file into chunks, one after another, each ending at a newline, and count how many
+//    words of each length are in each chunk. The chunks are counted in parallel.
+//
+// 2. Those counts tell us exactly where every word goes, without sorting: words are ordered by
+//    length, so all of the 1 letter words come first, then the 2 letter words, etc., and within a
+//    length, chunk 0's words come before chunk 1's, and so on. That's a counting sort by length.
+//    A counting sort keeps the order of words of the same length, so if the file were alphabetical
+//    each length bucket would come out alphabetical too, which is exactly NeighborGraph.wordOrder.
+//    words_alpha.txt is only mostly alphabetical, though (e.g., "abacay" comes before "abacas"), so
+//    we check each bucket and sort the ones which aren't. Arrays.sort() on mostly sorted Strings is
+//    quick, and it's still far less work than sorting all of them.
+//
+// 3. Go over the chunks again, in parallel, copying each word's bytes to its place in one big byte[]
+//    arena. Every word in a bucket is the same length, so where a word's bytes go is just
+//    arithmetic. An offsets table records where each word starts, and the bucket counts give us
+//    where each length starts for free, replacing buildWordLengthStarts().
+//
+// The result is a read-only List<String> which makes a String when you ask for a word. That's ~5MB
+// instead of ~21MB of Strings, but a new String every time, see Levenshtein.arenaWords. Usually
+// toStringList() makes all of the Strings, in parallel, and we've still skipped the Scanner and the
+// sort.
+//
+// Words are ASCII, so each byte is a char, just like NeighborGraphFile.MappedWordList.
+public final class WordArena extends AbstractList<String> implements RandomAccess {
+
+  private static final int chunksPerThread = 4;
+
+  private final byte[] arena;
+  private final int[] offsets; // Word i is arena[offsets[i]..offsets[i + 1])
+  private final int[] lengthStarts; // First word of each length, and one past the end
+  private final int resortedBuckets;
+  private final long loadNanos;
+
+  // Load every word up to lengthLimit letters long from the file. Pretty poor error handling ;)
+  public static WordArena load(String filename, int lengthLimit) {
+    long startTime = System.nanoTime();
+    ByteBuffer file;
+    try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+      file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } catch (IOException e) {
+      e.printStackTrace();
+      file = ByteBuffer.allocate(0);
+    }
+    return new WordArena(file, lengthLimit, startTime);
+  }
+
+  private WordArena(ByteBuffer file, int lengthLimit, long startTime) {
+    int size = file.limit();
+
+    // Chunk c is file[chunkStarts[c]..chunkStarts[c + 1]), and each one but the last ends just
+    // past a newline, so no word is split between two chunks.
+    int chunkCount = Math.max(1,
+        Math.min(size / 4096, Runtime.getRuntime().availableProcessors() * chunksPerThread));
+    int[] chunkStarts = new int[chunkCount + 1];
+    for (int c = 1; c < chunkCount; c++) {
+      int s = Math.max(chunkStarts[c - 1], (int) ((long) size * c / chunkCount));
+      while (s < size && file.get(s - 1) != '\n') {
+        s++;
+      }
+      chunkStarts[c] = s;
+    }
+    chunkStarts[chunkCount] = size;
+
+    // Pass 1: words of each length in each chunk.
+    int[][] counts = new int[chunkCount][lengthLimit + 1];
+    IntStream.range(0, chunkCount).parallel().forEach(c -> {
+      int[] cc = counts[c];
+      forEachWord(file, chunkStarts[c], chunkStarts[c + 1], lengthLimit, (start, l) -> cc[l]++);
+    });
+
+    // Where each length starts, in words and in bytes, and where each chunk's words of each length
+    // start within that.
+    lengthStarts = new int[lengthLimit + 2];
+    int[] byteStarts = new int[lengthLimit + 2];
+    for (int l = 0; l <= lengthLimit; l++) {
+      int words = 0;
+      for (int[] cc : counts) {
+        words += cc[l];
+      }
+      lengthStarts[l + 1] = lengthStarts[l] + words;
+      byteStarts[l + 1] = byteStarts[l] + words * l;
+    }
+    int[][] nextIds = new int[chunkCount][lengthLimit + 1];
+    for (int l = 0; l <= lengthLimit; l++) {
+      int id = lengthStarts[l];
+      for (int c = 0; c < chunkCount; c++) {
+        nextIds[c][l] = id;
+        id += counts[c][l];
+      }
+    }
+
+    // Pass 2: copy every word into place.
+    int n = lengthStarts[lengthLimit + 1];
+    arena = new byte[byteStarts[lengthLimit + 1]];
+    offsets = new int[n + 1];
+    offsets[n] = arena.length;
+    IntStream.range(0, chunkCount).parallel().forEach(c -> {
+      int[] next = nextIds[c];
+      forEachWord(file, chunkStarts[c], chunkStarts[c + 1], lengthLimit, (start, l) -> {
+        int id = next[l]++;
+        int offset = byteStarts[l] + (id - lengthStarts[l]) * l;
+        file.get(start, arena, offset, l);
+        offsets[id] = offset;
+      });
+    });
+
+    int resorted = 0;
+    for (int l = 0; l <= lengthLimit; l++) {
+      if (!bucketSorted(l)) {
+        sortBucket(l);
+        resorted++;
+      }
+    }
+    resortedBuckets = resorted;
+    loadNanos = System.nanoTime() - startTime;
+  }
+
+  private interface WordVisitor {
+
+    void visit(int start, int length);
+  }
+
+  // Every line in file[from..to) up to lengthLimit long, without its line ending.
+  private static void forEachWord(ByteBuffer file, int from, int to, int lengthLimit,
+      WordVisitor visitor) {
+    int lineStart = from;
+    for (int i = from; i < to; i++) {
+      if (file.get(i) == '\n') {
+        visitLine(file, lineStart, i, lengthLimit, visitor);
+        lineStart = i + 1;
+      }
+    }
+    if (lineStart < to) { // No newline at the end of the file
+      visitLine(file, lineStart, to, lengthLimit, visitor);
+    }
+  }
+
+  private static void visitLine(ByteBuffer file, int start, int end, int lengthLimit,
+      WordVisitor visitor) {
+    if (end > start && file.get(end - 1) == '\r') {
+      end--;
+    }
+    if (end - start <= lengthLimit) {
+      visitor.visit(start, end - start);
+    }
+  }
+
+  private boolean bucketSorted(int l) {
+    for (int i = lengthStarts[l] + 1; i < lengthStarts[l + 1]; i++) {
+      if (Arrays.compareUnsigned(arena, offsets[i - 1], offsets[i], arena, offsets[i],
+          offsets[i + 1]) > 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Insertion sorting the bytes in place sounds nice, but the words out of place in words_alpha.txt
+  // are often a long way out, and it's slower than this.
+  private void sortBucket(int l) {
+    String[] bucket = new String[lengthStarts[l + 1] - lengthStarts[l]];
+    for (int i = 0; i < bucket.length; i++) {
+      bucket[i] = get(lengthStarts[l] + i);
+    }
+    Arrays.sort(bucket);
+    for (int i = 0; i < bucket.length; i++) {
+      byte[] b = bucket[i].getBytes(StandardCharsets.ISO_8859_1);
+      System.arraycopy(b, 0, arena, offsets[lengthStarts[l] + i], l);
+    }
+  }
+
+  @Override
+  public String get(int i) {
+    return new String(arena, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.ISO_8859_1);
+  }
+
+  // The length of a word without building it.
+  public int length(int i) {
+    return offsets[i + 1] - offsets[i];
+  }
+
+  @Override
+  public int size() {
+    return offsets.length - 1;
+  }
+
+  // Where each length starts, indexed by length, for Levenshtein.wordLengthStarts. A length with
+  // no words starts where the next one does, and the last entry is the number of words.
+  public int[] getLengthStarts() {
+    return lengthStarts.clone();
+  }
+
+  public ArrayList<String> toStringList() {
+    String[] a = new String[size()];
+    IntStream.range(0, a.length).parallel().forEach(i -> a[i] = get(i));
+    return new ArrayList<>(Arrays.asList(a));
+  }
+
+  public long getLoadNanos() {
+    return loadNanos;
+  }
+
+  public int getResortedBuckets() {
+    return resortedBuckets;
+  }
+
+  public long getSizeInBytes() {
+    return arena.length + (long) offsets.length * Integer.BYTES;
+  }
+}
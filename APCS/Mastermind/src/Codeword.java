@@ -11,11 +11,34 @@ public class Codeword {
 
   private final byte[] digits;
 
+  // Position of this codeword in the list of all codewords, or -1 if it isn't part of that list
+  // (e.g., test codewords using colors outside the game.) Lets scoring backends use table lookups.
+  private final int ordinal;
+
+  // Count of each color in this codeword, as 4-bit counters packed into a long. See
+  // scoreHistogram().
+  private final long colorHistogram;
+
   // 0x40 for a 4-pin game.
   public static final byte winningScore = (byte) (Mastermind.pinCount << 4);
 
   Codeword(byte[] digits) {
+    this(digits, -1);
+  }
+
+  Codeword(byte[] digits, int ordinal) {
     this.digits = digits;
+    this.ordinal = ordinal;
+
+    long h = 0;
+    for (byte d : digits) {
+      h += 1L << (d * 4);
+    }
+    this.colorHistogram = h;
+  }
+
+  public int getOrdinal() {
+    return ordinal;
   }
 
   // There are a bunch of very reasonable ways to implement the scoring method, and most of them are
@@ -54,6 +77,46 @@ public class Codeword {
     return (byte) ((b << 4) | w);
   }
 
+  // Scoring method based on the color counts of both codewords, which we compute once when the
+  // codeword is made rather than on every call like score() does.
+  //
+  // The number of pins that match in color, regardless of position, is the sum over all colors of
+  // the smaller of the two counts. Black pins are part of that total, so white pins are just the
+  // total minus the blacks. Taking the minimum of each pair of counts is done for all colors at
+  // once with some bit twiddling, see colorOverlap().
+  public byte scoreHistogram(Codeword guess) {
+    int b = 0;
+    for (int i = 0; i < Mastermind.pinCount; i++) {
+      if (guess.digits[i] == digits[i]) {
+        b++;
+      }
+    }
+
+    int total = colorOverlap(colorHistogram, guess.colorHistogram);
+    return (byte) ((b << 4) | (total - b));
+  }
+
+  private static final long lowNibbles = 0x0F0F0F0F0F0F0F0FL;
+  private static final long byteHighBits = 0x8080808080808080L;
+
+  // Sum of the per-color minimums of two packed histograms. Counters are spread out into 8-bit
+  // lanes, evens and odds separately, so each lane has room to do a subtraction without borrowing
+  // from its neighbor.
+  private static int colorOverlap(long a, long b) {
+    long evens = minBytes(a & lowNibbles, b & lowNibbles);
+    long odds = minBytes((a >>> 4) & lowNibbles, (b >>> 4) & lowNibbles);
+    // Add all the 8-bit lanes together. Totals are at most the pin count, so they won't overflow.
+    return (int) (((evens + odds) * 0x0101010101010101L) >>> 56);
+  }
+
+  // Per-lane minimum of two sets of eight 8-bit lanes, each holding a value from 0-15. Setting the
+  // high bit of each lane of a before subtracting b leaves the high bit set in lanes where a >= b.
+  private static long minBytes(long a, long b) {
+    long aAtLeastB = (((a | byteHighBits) - b) & byteHighBits) >>> 7;
+    long mask = aAtLeastB * 0xFF;
+    return (b & mask) | (a & ~mask);
+  }
+
   // Original scoring method which I made in 2019. Works fine, but is O(n^2) in the number of pins.
   // I used this one for a while because it was either constant (or close-to-constant) extra space,
   // so worked well in practice given our low pin & color counts.
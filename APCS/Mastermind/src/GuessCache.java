@@ -0,0 +1,135 @@
+// Copyright (c) Michael M. Magruder (https://github.com/mikemag)
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Knuth guess cache
+//
+// Knuth's algorithm picks its next guess based only on the remaining possible solutions, not on
+// how we got there. Different games (or the same game played without a strategy) often end up with
+// exactly the same set of possible solutions, and would redo the exact same, very expensive,
+// search. This remembers the answer for each set we've seen.
+//
+// Sets are identified by a 128-bit fingerprint of their sorted codeword ordinals, plus their size.
+// That's not a proof of equality, but the odds of two different sets colliding are astronomically
+// small. The cache is bounded, and evicts the least recently used entries when it's full.
+public class GuessCache {
+
+  public static final class CachedGuess {
+
+    public final Codeword guess;
+    public final int worstCase;
+
+    CachedGuess(Codeword guess, int worstCase) {
+      this.guess = guess;
+      this.worstCase = worstCase;
+    }
+  }
+
+  private static final class Fingerprint {
+
+    private final long h1;
+    private final long h2;
+    private final int size;
+
+    Fingerprint(long h1, long h2, int size) {
+      this.h1 = h1;
+      this.h2 = h2;
+      this.size = size;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Fingerprint)) {
+        return false;
+      }
+      Fingerprint f = (Fingerprint) o;
+      return h1 == f.h1 && h2 == f.h2 && size == f.size;
+    }
+
+    @Override
+    public int hashCode() {
+      return (int) (h1 ^ (h1 >>> 32));
+    }
+  }
+
+  private final int capacity;
+  private final LinkedHashMap<Fingerprint, CachedGuess> cache;
+  private long hits = 0;
+  private long misses = 0;
+  private long evictions = 0;
+
+  public GuessCache(int capacity) {
+    this.capacity = capacity;
+    // Access order, rather than insertion order, makes this an LRU.
+    this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Fingerprint, CachedGuess> eldest) {
+        if (size() > GuessCache.this.capacity) {
+          evictions++;
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  // Two independent 64-bit hashes over the sorted ordinals. Each ordinal is mixed with a
+  // SplitMix64-style finalizer before being folded in, so similar sets don't produce similar
+  // hashes.
+  private static Fingerprint fingerprint(List<Codeword> possibleSolutions) {
+    int[] ordinals = new int[possibleSolutions.size()];
+    for (int i = 0; i < ordinals.length; i++) {
+      ordinals[i] = possibleSolutions.get(i).getOrdinal();
+    }
+    Arrays.sort(ordinals); // Usually already sorted, since we filter the list in place.
+
+    long h1 = 0x9E3779B97F4A7C15L;
+    long h2 = 0xC2B2AE3D27D4EB4FL;
+    for (int o : ordinals) {
+      h1 = (h1 ^ mix(o)) * 0x100000001B3L;
+      h2 = Long.rotateLeft(h2 + mix(o + 0x632BE59BD9B4E019L), 27) * 0x9E3779B97F4A7C15L;
+    }
+    return new Fingerprint(mix(h1), mix(h2), ordinals.length);
+  }
+
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  // Returns the cached guess for this set of possible solutions, or null if there isn't one.
+  public CachedGuess get(List<Codeword> possibleSolutions) {
+    CachedGuess e = cache.get(fingerprint(possibleSolutions));
+    if (e == null) {
+      misses++;
+    } else {
+      hits++;
+    }
+    return e;
+  }
+
+  public void put(List<Codeword> possibleSolutions, Codeword guess, int worstCase) {
+    cache.put(fingerprint(possibleSolutions), new CachedGuess(guess, worstCase));
+  }
+
+  public void clear() {
+    cache.clear();
+    hits = 0;
+    misses = 0;
+    evictions = 0;
+  }
+
+  public String toString() {
+    long lookups = hits + misses;
+    return String.format("Knuth guess cache: %,d entries (capacity %,d), %,d hits, %,d misses, "
+            + "%.2f%% hit rate, %,d evictions", cache.size(), capacity, hits, misses,
+        lookups == 0 ? 0.0 : (double) hits / lookups * 100.0, evictions);
+  }
+}
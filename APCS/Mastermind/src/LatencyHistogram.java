@@ -0,0 +1,106 @@
+// Copyright (c) Michael M. Magruder (https://github.com/mikemag)
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+import java.io.FileWriter;
+import java.util.Map;
+
+// A small log-linear histogram of latencies, in nanoseconds.
+//
+// Values are bucketed by their highest set bit, and each power of two is split into subBucketCount
+// linear sub-buckets. That keeps every recorded value within ~1.5% of its true value, no matter if
+// it's 800ns or 8s, with a fixed amount of memory. It's the same basic idea as HdrHistogram, boiled
+// down to what we need here.
+public class LatencyHistogram {
+
+  private static final int subBucketBits = 6;
+  private static final int subBucketCount = 1 << subBucketBits;
+
+  private final long[] counts = new long[(64 - subBucketBits + 1) * subBucketCount];
+  private long totalCount = 0;
+  private long totalNanos = 0;
+  private long maxNanos = 0;
+
+  public void record(long nanos) {
+    counts[bucketIndex(nanos)]++;
+    totalCount++;
+    totalNanos += nanos;
+    maxNanos = Math.max(maxNanos, nanos);
+  }
+
+  public long getTotalCount() {
+    return totalCount;
+  }
+
+  public long getMaxNanos() {
+    return maxNanos;
+  }
+
+  public double getMeanNanos() {
+    return totalCount == 0 ? 0 : (double) totalNanos / totalCount;
+  }
+
+  // The smallest value which is >= the given percent of all recorded values. Reported as the top of
+  // the bucket, so it never under-reports a latency.
+  public long getPercentile(double percent) {
+    if (totalCount == 0) {
+      return 0;
+    }
+    long target = Math.max(1, (long) Math.ceil(totalCount * percent / 100.0));
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= target) {
+        return Math.min(bucketTop(i), maxNanos);
+      }
+    }
+    return maxNanos;
+  }
+
+  // Values below subBucketCount get their own bucket. Above that, the top subBucketBits + 1 bits
+  // of the value pick the bucket.
+  private static int bucketIndex(long v) {
+    if (v < subBucketCount) {
+      return (int) Math.max(v, 0);
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(v) - subBucketBits;
+    return (shift + 1) * subBucketCount + (int) ((v >>> shift) - subBucketCount);
+  }
+
+  private static long bucketTop(int index) {
+    if (index < subBucketCount) {
+      return index;
+    }
+    int shift = index / subBucketCount - 1;
+    long base = (long) (index % subBucketCount + subBucketCount) << shift;
+    return base + (1L << shift) - 1;
+  }
+
+  // Print a summary line, in milliseconds.
+  public String summary(String name) {
+    return String.format("%-16s %,7d games, mean %.4fms, p50 %.4fms, p90 %.4fms, p99 %.4fms, "
+            + "max %.4fms", name, totalCount, getMeanNanos() / 1_000_000.0,
+        getPercentile(50) / 1_000_000.0, getPercentile(90) / 1_000_000.0,
+        getPercentile(99) / 1_000_000.0, maxNanos / 1_000_000.0);
+  }
+
+  // Write a set of named histograms as CSV, one row per histogram, all times in nanoseconds. This is
+  // meant to be easy to diff and graph across builds.
+  public static void writeCSV(String filename, Map<String, LatencyHistogram> histograms) {
+    System.out.println("Writing latency report to " + filename);
+    try {
+      FileWriter fw = new FileWriter(filename);
+      fw.write("group,count,mean_ns,p50_ns,p90_ns,p99_ns,max_ns\n");
+      for (Map.Entry<String, LatencyHistogram> e : histograms.entrySet()) {
+        LatencyHistogram h = e.getValue();
+        fw.write(String.format("%s,%d,%.0f,%d,%d,%d,%d\n", e.getKey(), h.totalCount,
+            h.getMeanNanos(), h.getPercentile(50), h.getPercentile(90), h.getPercentile(99),
+            h.maxNanos));
+      }
+      fw.close();
+    } catch (Exception e) {
+      System.out.println(e);
+    }
+  }
+}
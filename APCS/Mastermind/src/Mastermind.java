@@ -6,7 +6,9 @@
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.ArrayList;
-import java.util.Random;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.SplittableRandom;
 
 // Mastermind
 //
@@ -29,6 +31,10 @@ import java.util.Random;
 // summary of it on https://en.wikipedia.org/wiki/Mastermind_(board_game)
 //
 // Recent survey of the space: https://arxiv.org/pdf/1305.1010.pdf
+//
+// Each instance of this class is one player: an algorithm plus everything it learns as it plays,
+// i.e., its strategy, caches, and counters. That lets the Tournament play several algorithms at
+// once, each on its own thread, without them stepping on each other.
 
 public class Mastermind {
 
@@ -52,19 +58,35 @@ public class Mastermind {
     Knuth
   }
 
-  // Pick which algo to run. If I was cool I'd either make this a command line arg, or have it run
-  // through all of them.
+  // Pick which algo to run. If I was cool I'd make this a command line arg. Set runTournament to
+  // run through all of them instead, see Tournament.java.
   private static final Algo algo = Algo.Knuth;
+  private static final boolean runTournament = false;
+
+  // Compare the speed of the different Codeword scoring methods before playing.
+  private static final boolean runScoringPerfTests = false;
+
+  // How to score codewords. Null lets Scorer.choose() pick a backend based on the game shape and
+  // available memory. Set it to force one, e.g., Scorer.Kind.Direct.
+  private static final Scorer.Kind scorerOverride = null;
+  private static Scorer scorer = new Scorer.Direct();
+
+  // Per-player state.
+  private final Algo gameAlgo;
+  private final SplittableRandom rand;
+  private long scoreCounter = 0;
 
-  private static long scoreCounter = 0;
-  private static final Random rand = new Random();
+  public Mastermind(Algo gameAlgo, SplittableRandom rand) {
+    this.gameAlgo = gameAlgo;
+    this.rand = rand;
+  }
 
   // Make a list of all codewords for a given number of "colors". Colors are represented by the
   // digits 1 through n. This figures out how many codewords there are, which is colorCount ^ pinCount,
   // then converts the base-10 number of each codeword to it's base-colorCount representation.
   private static ArrayList<Codeword> allCodewords = null;
 
-  private static ArrayList<Codeword> makeAllCodewords() {
+  static ArrayList<Codeword> makeAllCodewords() {
     if (allCodewords == null) {
       int totalWords = (int) Math.pow(colorCount, pinCount);
       ArrayList<Codeword> l = new ArrayList<>(totalWords);
@@ -83,7 +105,7 @@ public class Mastermind {
           digits[di] += 1;
         }
 
-        l.add(new Codeword(digits));
+        l.add(new Codeword(digits, i));
       }
       allCodewords = l;
     }
@@ -96,7 +118,7 @@ public class Mastermind {
   // by using half 1's and half 2's.
   private static Codeword knuthInitialGuess;
 
-  private static Codeword getKnuthInitialGuess() {
+  static Codeword getKnuthInitialGuess() {
     if (knuthInitialGuess == null) {
       byte[] digits = new byte[pinCount];
       for (int i = 0; i < pinCount; i++) {
@@ -111,11 +133,26 @@ public class Mastermind {
   // The core of Knuth's algorithm: find the remaining solution which will eliminate the most
   // possibilities on the next round, favoring, but not requiring, any choice which may still be the
   // final answer.
-  private static final int[] scoreCounts = new int[Codeword.winningScore + 1];
+  private final int[] scoreCounts = new int[Codeword.winningScore + 1];
+
+  // Knuth's guess depends only on the remaining possible solutions, so remember the answers for
+  // sets we've seen before. This is a big win when not using a strategy, and also helps when
+  // different plays lead to the same set of possible solutions.
+  private static final boolean useGuessCache = true;
+  private final GuessCache guessCache = new GuessCache(100_000);
 
-  private static Codeword findKnuthGuess(ArrayList<Codeword> allCodewords,
+  private Codeword findKnuthGuess(ArrayList<Codeword> allCodewords,
       ArrayList<Codeword> possibleSolutions, PrintStream p) {
 
+    if (useGuessCache) {
+      GuessCache.CachedGuess cached = guessCache.get(possibleSolutions);
+      if (cached != null) {
+        p.println("Using cached Knuth's best guess: " + cached.guess + "\tworst case PS size: "
+            + cached.worstCase);
+        return cached.guess;
+      }
+    }
+
     Codeword bestGuess = null;
     int bestWorstCase = Integer.MAX_VALUE;
     boolean bestIsPossibleSolution = false;
@@ -124,7 +161,7 @@ public class Mastermind {
       int maxScoreCount = 0;
       boolean isPossibleSolution = false;
       for (Codeword possibleSolution : possibleSolutions) {
-        int s = g.score(possibleSolution);
+        int s = scorer.score(g, possibleSolution);
         scoreCounter++;
         scoreCounts[s]++;
         if (s == Codeword.winningScore) {
@@ -151,16 +188,23 @@ public class Mastermind {
 
     p.println(
         "Selecting Knuth's best guess: " + bestGuess + "\tworst case PS size: " + bestWorstCase);
+    if (useGuessCache) {
+      guessCache.put(possibleSolutions, bestGuess, bestWorstCase);
+    }
     return bestGuess;
   }
 
   // This is the gameplay strategy we build up as we play. There are a lot of common plays, and this
   // allows us to reuse them almost instantly for greatly increased speed. This is optional.
   private static final boolean useStrategy = true;
-  private static Strategy gameStrategy = null;
+  private Strategy gameStrategy = null;
+
+  // Set by findSecret() when every move of the last game came from the strategy, i.e., no searching
+  // or filtering of possible solutions was needed.
+  private boolean lastGameUsedOnlyStrategy = false;
 
   // Play the game to find the given secret codeword and return how many turns it took.
-  private static int findSecret(Codeword secret, PrintStream p) throws Exception {
+  private int findSecret(Codeword secret, PrintStream p) throws Exception {
     ArrayList<Codeword> allCodewords = makeAllCodewords();
     ArrayList<Codeword> possibleSolutions;
 
@@ -182,9 +226,10 @@ public class Mastermind {
     p.println("Initial guess is " + guess);
 
     int turns = 0;
+    lastGameUsedOnlyStrategy = true;
 
     while (true) {
-      byte s = secret.score(guess); // Is our guess the winner?
+      byte s = scorer.score(secret, guess); // Is our guess the winner?
       scoreCounter++;
       p.println(
           "\nTried guess " + guess + " against secret " + secret + " => " + Integer.toHexString(s));
@@ -213,6 +258,8 @@ public class Mastermind {
         possibleSolutions = new ArrayList<>(strategy.getPossibleSolutions());
       }
 
+      lastGameUsedOnlyStrategy = false;
+
       // "5. Otherwise, remove from S any code that would not give the same response if it (the
       // guess) were the code (secret)." -- from the description of Knuth's algorithm at
       // https://en.wikipedia.org/wiki/Mastermind_(board_game)
@@ -224,7 +271,7 @@ public class Mastermind {
       final Codeword g = guess;
       possibleSolutions.removeIf(c -> {
         scoreCounter++;
-        return c.score(g) != s;
+        return scorer.score(c, g) != s;
       });
       p.format("Solution space now contains %d possibilities.\n", possibleSolutions.size());
 
@@ -237,13 +284,13 @@ public class Mastermind {
       } else if (possibleSolutions.size() == 2) {
         guess = possibleSolutions.get(0); // Fun to work out why this is correct.
         p.println("Selecting first of the last two remaining: " + guess);
-      } else if (algo == Algo.FirstOne) {
+      } else if (gameAlgo == Algo.FirstOne) {
         guess = possibleSolutions.get(0);
         p.println("Selecting the first possibility blindly: " + guess);
-      } else if (algo == Algo.Random) {
+      } else if (gameAlgo == Algo.Random) {
         guess = possibleSolutions.get(rand.nextInt(possibleSolutions.size()));
         p.println("Selecting a random possibility: " + guess);
-      } else if (algo == Algo.Knuth) {
+      } else if (gameAlgo == Algo.Knuth) {
         guess = findKnuthGuess(allCodewords, possibleSolutions, p);
       }
 
@@ -257,7 +304,115 @@ public class Mastermind {
     return turns;
   }
 
+  // Results of playing a game for every secret.
+  static final class GameResults {
+
+    int totalTurns = 0;
+    int maxTurns = 0;
+    Codeword maxSecret = null;
+    long scoreCalls = 0;
+    long elapsedNanos = 0;
+
+    // Per-game latencies, overall and broken down by turns and by whether the game was played
+    // entirely from the cached strategy.
+    final LatencyHistogram allGames = new LatencyHistogram();
+    final LatencyHistogram strategyOnlyGames = new LatencyHistogram();
+    final LatencyHistogram searchedGames = new LatencyHistogram();
+    final LatencyHistogram[] gamesByTurns;
+
+    GameResults(int gameCount) {
+      gamesByTurns = new LatencyHistogram[gameCount + 1];
+    }
+
+    double averageTurns() {
+      return (double) totalTurns / allGames.getTotalCount();
+    }
+  }
+
+  // Play one game for each of the given secrets, in order, and keep track of the maximum number of
+  // turns it takes to find them.
+  GameResults playAllGames(List<Codeword> secrets) throws Exception {
+    GameResults r = new GameResults(secrets.size());
+    PrintStream nullStream = new PrintStream(OutputStream.nullOutputStream());
+    long startScoreCounter = scoreCounter;
+    long s = System.nanoTime();
+
+    for (Codeword secret : secrets) {
+      long gs = System.nanoTime();
+      int turns = findSecret(secret, nullStream);
+      long gameNanos = System.nanoTime() - gs;
+      r.allGames.record(gameNanos);
+      (lastGameUsedOnlyStrategy ? r.strategyOnlyGames : r.searchedGames).record(gameNanos);
+      if (r.gamesByTurns[turns] == null) {
+        r.gamesByTurns[turns] = new LatencyHistogram();
+      }
+      r.gamesByTurns[turns].record(gameNanos);
+      r.totalTurns += turns;
+      if (turns > r.maxTurns) {
+        r.maxTurns = turns;
+        r.maxSecret = secret;
+      }
+    }
+
+    r.elapsedNanos = System.nanoTime() - s;
+    r.scoreCalls = scoreCounter - startScoreCounter;
+    return r;
+  }
+
+  // Time each scoring method over every pair of codewords, after making sure they all agree.
+  interface ScoreFunction {
+
+    byte score(Codeword secret, Codeword guess);
+  }
+
+  private static void runScoringPerfTests() throws Exception {
+    ArrayList<Codeword> all = makeAllCodewords();
+    String[] names = {"score", "scoreOriginal", "scoreHistogram"};
+    ScoreFunction[] funcs = {Codeword::score, Codeword::scoreOriginal, Codeword::scoreHistogram};
+
+    for (Codeword a : all) {
+      for (Codeword b : all) {
+        byte expected = a.score(b);
+        for (int f = 1; f < funcs.length; f++) {
+          if (funcs[f].score(a, b) != expected) {
+            throw new Exception(
+                String.format("%s disagrees with score for %s vs %s", names[f], a, b));
+          }
+        }
+      }
+    }
+
+    // Aim for ~100M calls per method, and at least one pass over all the pairs.
+    long pairs = (long) all.size() * all.size();
+    long passes = Math.max(1, 100_000_000L / pairs);
+    for (int f = 0; f < funcs.length; f++) {
+      ScoreFunction sf = funcs[f];
+      int sum = 0;
+      for (Codeword a : all) { // Warm-up
+        for (Codeword b : all) {
+          sum += sf.score(a, b);
+        }
+      }
+
+      long s = System.nanoTime();
+      for (long p = 0; p < passes; p++) {
+        for (Codeword a : all) {
+          for (Codeword b : all) {
+            sum += sf.score(a, b);
+          }
+        }
+      }
+      long e = System.nanoTime();
+      double elapsedMS = (e - s) / 1_000_000.0;
+      System.out.format("Avg time %.4fns -- %s, elapsed time %,.4fms, %,d calls (%d)\n",
+          elapsedMS * 1_000_000.0 / (passes * pairs), names[f], elapsedMS, passes * pairs, sum);
+    }
+    System.out.println();
+  }
+
   public static void main(String[] args) {
+    Mastermind player = new Mastermind(algo, new SplittableRandom());
+
     try {
       if (pinCount == 4) {
         // Test cases from Miyoshi
@@ -288,16 +443,27 @@ public class Mastermind {
         }
       }
 
+      if (runScoringPerfTests) {
+        runScoringPerfTests();
+      }
+
+      scorer = Scorer.choose(makeAllCodewords(), scorerOverride);
+      System.out.format("Using %s scoring backend, %,d bytes, setup time %.4fms\n\n",
+          scorer.kind(), scorer.sizeInBytes(), scorer.setupNanos() / 1_000_000.0);
+
+      if (runTournament) {
+        Tournament.run();
+        System.out.println("Done");
+        return;
+      }
+
       if (pinCount == 4 && colorCount == 6) {
         System.out.println("Run the example from Knuth's paper to compare with his results.");
-        scoreCounter = 0;
-        findSecret(new Codeword(new byte[]{3, 6, 3, 2}), System.out);
-        System.out.format("Codeword comparisons: %,d\n\n", scoreCounter);
+        Mastermind knuthExample = new Mastermind(Algo.Knuth, new SplittableRandom());
+        knuthExample.findSecret(new Codeword(new byte[]{3, 6, 3, 2}), System.out);
+        System.out.format("Codeword comparisons: %,d\n\n", knuthExample.scoreCounter);
       }
 
-      // Reset the game strategy, so we start fresh after testing.
-      gameStrategy = null;
-
       // Run through all possible secret codewords and keep track of the maximum number of turns it
       // takes to find them.
       System.out
@@ -305,36 +471,42 @@ public class Mastermind {
               pinCount, colorCount, algo);
       ArrayList<Codeword> allCodewords = makeAllCodewords();
       System.out.printf("Total codewords: %,d\n", allCodewords.size());
-      int maxTurns = 0;
-      int totalTurns = 0;
-      Codeword maxSecret = null;
-      scoreCounter = 0;
-      long s = System.nanoTime();
+      GameResults r = player.playAllGames(allCodewords);
 
-      for (Codeword secret : allCodewords) {
-        int turns = findSecret(secret, new PrintStream(OutputStream.nullOutputStream()));
-        totalTurns += turns;
-        if (turns > maxTurns) {
-          maxTurns = turns;
-          maxSecret = secret;
-        }
-      }
-
-      long e = System.nanoTime();
-      double averageTurns = (double) totalTurns / allCodewords.size();
-      System.out.format("Average number of turns was %.4f\n", averageTurns);
+      System.out.format("Average number of turns was %.4f\n", r.averageTurns());
       System.out.println(
-          "Maximum number of turns over all possible secrets was " + maxTurns + " with secret "
-              + maxSecret);
-      System.out.format("Codeword comparisons: %,d\n", scoreCounter);
-      double elapsed = (e - s) / 1_000_000.0;
+          "Maximum number of turns over all possible secrets was " + r.maxTurns + " with secret "
+              + r.maxSecret);
+      System.out.format("Codeword comparisons: %,d\n", r.scoreCalls);
+      double elapsed = r.elapsedNanos / 1_000_000.0;
       System.out.format("Elapsed time %.4fs, average search %.04fms\n", elapsed / 1000,
           elapsed / allCodewords.size());
+      System.out.format("Scoring backend %s, %,d bytes, setup time %.4fms\n", scorer.kind(),
+          scorer.sizeInBytes(), scorer.setupNanos() / 1_000_000.0);
+      if (useGuessCache && algo == Algo.Knuth) {
+        System.out.println(player.guessCache);
+      }
+
+      LinkedHashMap<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+      latencies.put("all", r.allGames);
+      latencies.put("strategy_only", r.strategyOnlyGames);
+      latencies.put("searched", r.searchedGames);
+      for (int t = 1; t < r.gamesByTurns.length; t++) {
+        if (r.gamesByTurns[t] != null) {
+          latencies.put("turns_" + t, r.gamesByTurns[t]);
+        }
+      }
+      System.out.println("\nPer-game latency:");
+      for (String name : latencies.keySet()) {
+        System.out.println(latencies.get(name).summary(name));
+      }
+      LatencyHistogram.writeCSV(
+          String.format("mastermind_latency_%dp%dc_%s.csv", pinCount, colorCount, algo), latencies);
     } catch (Exception e) {
       System.out.println("Exception: " + e);
     }
 
-    Strategy.dump(gameStrategy);
+    Strategy.dump(player.gameStrategy);
 
     System.out.println("Done");
   }
@@ -0,0 +1,214 @@
+// Copyright (c) Michael M. Magruder (https://github.com/mikemag)
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+// Scoring backends
+//
+// Every algorithm spends nearly all of its time scoring one codeword against another, and the same
+// pairs get scored over and over again across all of the games we play. For small games it's
+// cheapest to score every pair once up front and keep the results in a table on the heap. For
+// medium games that table is too big for the heap, but we can still keep it in a memory-mapped
+// file and let the OS page it in as needed. For large games even that is too much, and we just
+// call Codeword.score() every time.
+//
+// choose() looks at the game shape and the memory available to the JVM and picks one of these.
+public interface Scorer {
+
+  enum Kind {
+    Table, // Full score table on the heap
+    Mapped, // Full score table in a memory-mapped temp file
+    Direct // No table, call Codeword.score() on every comparison
+  }
+
+  // Score the guess against the secret. Scores are commutative, so the order doesn't really matter.
+  byte score(Codeword secret, Codeword guess);
+
+  Kind kind();
+
+  // How many bytes the backend holds onto, and how long it took to set up.
+  long sizeInBytes();
+
+  long setupNanos();
+
+  // Keep the heap table to a quarter of the max heap, so we leave plenty of room for the strategy
+  // tree and the per-game lists of possible solutions.
+  long heapTableFraction = 4;
+
+  // Mapped tables live in the page cache, so they can get pretty big before we give up on them.
+  long mappedTableLimit = 16L << 30;
+
+  // The biggest byte[] the JVM will give us.
+  long heapTableLimit = Integer.MAX_VALUE - 8;
+
+  // Pick a backend based on the number of codewords and Runtime.maxMemory(). Pass a non-null kind
+  // to override the choice.
+  static Scorer choose(List<Codeword> allCodewords, Kind override) throws IOException {
+    long n = allCodewords.size();
+    long tableSize = n * n;
+    Kind kind = override;
+    if (kind == null) {
+      if (tableSize <= heapTableLimit
+          && tableSize <= Runtime.getRuntime().maxMemory() / heapTableFraction) {
+        kind = Kind.Table;
+      } else if (tableSize <= mappedTableLimit) {
+        kind = Kind.Mapped;
+      } else {
+        kind = Kind.Direct;
+      }
+    } else if (kind == Kind.Table && tableSize > heapTableLimit) {
+      // Overridden, but there's no way to fit it in one array. The mapped table is the same thing
+      // split into segments, so use that instead.
+      System.out.format("A heap table for %,d codewords needs %,d bytes, too big for an array. "
+          + "Using a mapped table instead.\n", n, tableSize);
+      kind = Kind.Mapped;
+    }
+
+    switch (kind) {
+      case Table:
+        return new HeapTable(allCodewords);
+      case Mapped:
+        return new MappedTable(allCodewords);
+      default:
+        return new Direct();
+    }
+  }
+
+  // Score every time.
+  final class Direct implements Scorer {
+
+    public byte score(Codeword secret, Codeword guess) {
+      return secret.score(guess);
+    }
+
+    public Kind kind() {
+      return Kind.Direct;
+    }
+
+    public long sizeInBytes() {
+      return 0;
+    }
+
+    public long setupNanos() {
+      return 0;
+    }
+  }
+
+  // One byte per pair of codewords, indexed by codeword ordinals. Codewords which aren't part of
+  // the game (ordinal -1) are scored directly.
+  final class HeapTable implements Scorer {
+
+    private final int n;
+    private final byte[] table;
+    private final long setupNanos;
+
+    HeapTable(List<Codeword> allCodewords) {
+      long s = System.nanoTime();
+      n = allCodewords.size();
+      long size = (long) n * n; // Every index is less than this, so they fit in an int once this does
+      if (size > heapTableLimit) {
+        throw new IllegalArgumentException(String
+            .format("%,d codewords need a %,d byte table, too big for an array", n, size));
+      }
+      table = new byte[(int) size];
+      for (int i = 0; i < n; i++) {
+        Codeword a = allCodewords.get(i);
+        for (int j = i; j < n; j++) {
+          byte r = a.score(allCodewords.get(j));
+          table[i * n + j] = r;
+          table[j * n + i] = r;
+        }
+      }
+      setupNanos = System.nanoTime() - s;
+    }
+
+    public byte score(Codeword secret, Codeword guess) {
+      int a = secret.getOrdinal();
+      int b = guess.getOrdinal();
+      if (a < 0 || b < 0) {
+        return secret.score(guess);
+      }
+      return table[a * n + b];
+    }
+
+    public Kind kind() {
+      return Kind.Table;
+    }
+
+    public long sizeInBytes() {
+      return table.length;
+    }
+
+    public long setupNanos() {
+      return setupNanos;
+    }
+  }
+
+  // Same as the heap table, but kept in a temp file mapped into memory. A single mapping is limited
+  // to 2GB, so the table is split into 1GB segments.
+  final class MappedTable implements Scorer {
+
+    private static final int segmentShift = 30;
+    private static final long segmentMask = (1L << segmentShift) - 1;
+
+    private final long n;
+    private final MappedByteBuffer[] segments;
+    private final long setupNanos;
+
+    MappedTable(List<Codeword> allCodewords) throws IOException {
+      long s = System.nanoTime();
+      n = allCodewords.size();
+      long size = n * n;
+      File f = File.createTempFile("mastermind_scores_", ".bin");
+      f.deleteOnExit();
+      try (RandomAccessFile raf = new RandomAccessFile(f, "rw");
+          FileChannel fc = raf.getChannel()) {
+        segments = new MappedByteBuffer[(int) ((size + segmentMask) >>> segmentShift)];
+        for (int i = 0; i < segments.length; i++) {
+          long start = (long) i << segmentShift;
+          segments[i] = fc
+              .map(FileChannel.MapMode.READ_WRITE, start, Math.min(1L << segmentShift, size - start));
+        }
+      }
+
+      for (int i = 0; i < n; i++) {
+        Codeword a = allCodewords.get(i);
+        for (int j = 0; j < n; j++) {
+          long idx = i * n + j;
+          segments[(int) (idx >>> segmentShift)]
+              .put((int) (idx & segmentMask), a.score(allCodewords.get(j)));
+        }
+      }
+      setupNanos = System.nanoTime() - s;
+    }
+
+    public byte score(Codeword secret, Codeword guess) {
+      int a = secret.getOrdinal();
+      int b = guess.getOrdinal();
+      if (a < 0 || b < 0) {
+        return secret.score(guess);
+      }
+      long idx = a * n + b;
+      return segments[(int) (idx >>> segmentShift)].get((int) (idx & segmentMask));
+    }
+
+    public Kind kind() {
+      return Kind.Mapped;
+    }
+
+    public long sizeInBytes() {
+      return n * n;
+    }
+
+    public long setupNanos() {
+      return setupNanos;
+    }
+  }
+}
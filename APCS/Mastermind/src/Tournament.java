@@ -0,0 +1,76 @@
+// Copyright (c) Michael M. Magruder (https://github.com/mikemag)
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Tournament
+//
+// Play every secret with every algorithm, all at the same time, and print the results side-by-side.
+// Random is played several times with different seeds, since one run of it doesn't tell you much.
+//
+// Each player is its own Mastermind instance with its own strategy tree and counters, and plays its
+// games in order on a single thread. That keeps each player's results deterministic, no matter how
+// the players get scheduled. The parallelism comes from running all the players at once.
+public class Tournament {
+
+  // Options
+  private static final int threadCount = Runtime.getRuntime().availableProcessors();
+  private static final int randomSeedCount = Math.max(4, threadCount - 2);
+  private static final long baseSeed = 1122;
+
+  public static void run() throws Exception {
+    // Make sure the shared, lazily built pieces are built before we start any threads.
+    List<Codeword> secrets = Mastermind.makeAllCodewords();
+    Mastermind.getKnuthInitialGuess();
+
+    // SplittableRandom gives every Random player its own independent, but repeatable, stream.
+    SplittableRandom seeds = new SplittableRandom(baseSeed);
+    ArrayList<Mastermind> players = new ArrayList<>();
+    ArrayList<String> names = new ArrayList<>();
+    for (Mastermind.Algo a : Mastermind.Algo.values()) {
+      if (a == Mastermind.Algo.Random) {
+        for (int i = 0; i < randomSeedCount; i++) {
+          players.add(new Mastermind(a, seeds.split()));
+          names.add(a + " #" + (i + 1));
+        }
+      } else {
+        players.add(new Mastermind(a, seeds.split()));
+        names.add(a.toString());
+      }
+    }
+
+    System.out.format(
+        "Tournament: %d pins %d colors, %,d secrets, %d players on %d threads...\n\n",
+        Mastermind.pinCount, Mastermind.colorCount, secrets.size(), players.size(), threadCount);
+
+    ExecutorService pool = Executors.newFixedThreadPool(threadCount);
+    long s = System.nanoTime();
+    ArrayList<Future<Mastermind.GameResults>> futures = new ArrayList<>();
+    for (Mastermind player : players) {
+      futures.add(pool.submit(() -> player.playAllGames(secrets)));
+    }
+
+    ArrayList<Mastermind.GameResults> results = new ArrayList<>();
+    for (Future<Mastermind.GameResults> f : futures) {
+      results.add(f.get());
+    }
+    double totalMS = (System.nanoTime() - s) / 1_000_000.0;
+    pool.shutdown();
+
+    System.out.format("%-12s %10s %10s %16s %12s\n", "Algorithm", "Avg turns", "Max turns",
+        "Score calls", "Wall time");
+    for (int i = 0; i < players.size(); i++) {
+      Mastermind.GameResults r = results.get(i);
+      System.out.format("%-12s %10.4f %10d %,16d %10.4fs\n", names.get(i), r.averageTurns(),
+          r.maxTurns, r.scoreCalls, r.elapsedNanos / 1_000_000_000.0);
+    }
+    System.out.format("\nTournament elapsed time %.4fs\n", totalMS / 1000);
+  }
+}